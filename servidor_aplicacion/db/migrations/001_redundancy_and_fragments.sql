@@ -0,0 +1,13 @@
+-- Migraciones del esquema distributed_storage (db.properties), en orden de número.
+-- Cada archivo se aplica una sola vez sobre la base de datos existente.
+
+-- Política de redundancia por archivo o carpeta ("replica:<n>" o "rs:<k>+<m>").
+-- NULL hereda la de la carpeta padre o la del servicio (storage.redundancy).
+ALTER TABLE files
+    ADD COLUMN redundancy VARCHAR(16) NULL;
+
+-- Fragmentos Reed-Solomon: índice del fragmento dentro del chunk (NULL en réplicas)
+-- y tamaño en bytes de lo guardado en el nodo (NULL en filas anteriores).
+ALTER TABLE file_chunks
+    ADD COLUMN fragment_index INT NULL AFTER chunk_index,
+    ADD COLUMN size INT NULL AFTER fragment_index;
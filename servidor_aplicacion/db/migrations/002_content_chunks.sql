@@ -0,0 +1,29 @@
+-- Deduplicación: un contenido por SHA-256 y política de redundancia, con su contador de referencias.
+-- ref_count es lo único que decide si sus copias siguen en uso; al llegar a 0 se borra la fila.
+CREATE TABLE content_chunks (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    hash CHAR(64) NOT NULL,
+    redundancy VARCHAR(16) NOT NULL,
+    size INT NOT NULL,
+    ref_count INT NOT NULL DEFAULT 1,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id),
+    UNIQUE KEY uk_content_chunks_hash_redundancy (hash, redundancy)
+);
+
+-- Contenido al que apunta cada copia deduplicada (NULL si se guardó bajo la clave del archivo).
+-- Sin clave foránea: la fila del contenido se borra antes que las de file_chunks al eliminar un archivo.
+ALTER TABLE file_chunks
+    ADD COLUMN content_id BIGINT NULL AFTER size,
+    ADD INDEX idx_file_chunks_content_id (content_id);
+
+-- Copias de cada contenido en los nodos, sea cual sea la subida que las guardó. Se registran junto
+-- a las filas de file_chunks, pero sobreviven al borrado del archivo: cuando ref_count llega a 0,
+-- quien libera la última referencia borra de los nodos todas las copias listadas aquí.
+CREATE TABLE content_locations (
+    content_id BIGINT NOT NULL,
+    node_id BIGINT NOT NULL,
+    storage_id VARCHAR(128) NOT NULL,
+    storage_index INT NOT NULL,
+    PRIMARY KEY (content_id, node_id, storage_id, storage_index)
+);
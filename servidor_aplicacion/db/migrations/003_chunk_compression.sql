@@ -0,0 +1,5 @@
+-- Compresión por chunk: códec con el que se guardó (ChunkCodec; NULL sin comprimir)
+-- y tamaño original antes de comprimir (NULL en filas anteriores: igual a size).
+ALTER TABLE file_chunks
+    ADD COLUMN codec VARCHAR(16) NULL AFTER size,
+    ADD COLUMN raw_size INT NULL AFTER codec;
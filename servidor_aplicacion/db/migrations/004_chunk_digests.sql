@@ -0,0 +1,8 @@
+-- Digests de integridad en binario: 4 bytes (CRC32C) o 32 (SHA-256); el algoritmo se deduce de la longitud.
+ALTER TABLE file_chunks
+    ADD COLUMN digest VARBINARY(32) NULL AFTER checksum;
+
+-- El SHA-256 en hexadecimal solo se calcula con deduplicación; las filas nuevas sin ella lo dejan en NULL.
+-- Las filas anteriores conservan su checksum y se siguen verificando con él.
+ALTER TABLE file_chunks
+    MODIFY COLUMN checksum CHAR(64) NULL;
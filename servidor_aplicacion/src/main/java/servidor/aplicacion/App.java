@@ -79,6 +79,7 @@ public class App {
             if (nodesLauncher != null) {
                 nodesLauncher.stopAllNodes();
             }
+            DatabaseConnection.close();
             System.out.println("Servidor de aplicacion detenido correctamente.");
         }));
 
@@ -94,6 +95,7 @@ public class App {
         try (Connection conn = DatabaseConnection.getConnection()) {
             if (conn != null) {
                 System.out.println("Base de datos: OK");
+                System.out.println(DatabaseConnection.getPoolStatistics());
             }
         } catch (Exception e) {
             System.err.println("Error de conexión a la base de datos:");
@@ -1,25 +1,57 @@
 package servidor.aplicacion.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
+import javax.sql.DataSource;
+
 //ARCHIVO CORRECTO NO TOCAR CONECTA BIEN :)
+// Las conexiones salen de un pool HikariCP en lugar de abrir una por operación
 public class DatabaseConnection {
-    private static String url;
-    private static String username;
-    private static String password;
+    private static HikariDataSource dataSource;
 
     static {
         try (InputStream input = DatabaseConnection.class.getClassLoader().getResourceAsStream("db.properties")) {
             Properties props = new Properties();
             props.load(input);
 
-            url = props.getProperty("db.url");
-            username = props.getProperty("db.username");
-            password = props.getProperty("db.password");
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("distributed-storage-pool");
+            config.setJdbcUrl(props.getProperty("db.url"));
+            config.setUsername(props.getProperty("db.username"));
+            config.setPassword(props.getProperty("db.password"));
+            config.setDriverClassName(props.getProperty("db.driver"));
+
+            // Tamaño del pool
+            config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.pool.maximumPoolSize", "20")));
+            config.setMinimumIdle(Integer.parseInt(props.getProperty("db.pool.minimumIdle", "5")));
+            config.setConnectionTimeout(Long.parseLong(props.getProperty("db.pool.connectionTimeoutMs", "30000")));
+            config.setIdleTimeout(Long.parseLong(props.getProperty("db.pool.idleTimeoutMs", "600000")));
+            config.setMaxLifetime(Long.parseLong(props.getProperty("db.pool.maxLifetimeMs", "1800000")));
+
+            // Caché de sentencias preparadas del driver MySQL
+            config.addDataSourceProperty("cachePrepStmts", props.getProperty("db.cachePrepStmts", "true"));
+            config.addDataSourceProperty("prepStmtCacheSize", props.getProperty("db.prepStmtCacheSize", "250"));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", props.getProperty("db.prepStmtCacheSqlLimit", "2048"));
+            config.addDataSourceProperty("useServerPrepStmts", props.getProperty("db.useServerPrepStmts", "true"));
+
+            // Reescribir los batches de INSERT como sentencias multi-fila
+            config.addDataSourceProperty("rewriteBatchedStatements",
+                    props.getProperty("db.rewriteBatchedStatements", "true"));
+
+            // Métricas del pool vía JMX
+            config.setRegisterMbeans(true);
+
+            // Arrancar aunque la BD aún no responda; las conexiones se reintentan al pedirlas
+            config.setInitializationFailTimeout(-1);
+
+            dataSource = new HikariDataSource(config);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -27,6 +59,42 @@ public class DatabaseConnection {
     }
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url, username, password);
+        if (dataSource == null) {
+            throw new SQLException("Pool de conexiones no inicializado");
+        }
+        return dataSource.getConnection();
+    }
+
+    public static DataSource getDataSource() {
+        return dataSource;
+    }
+
+    // Estadísticas actuales del pool de conexiones
+    public static String getPoolStatistics() {
+        if (dataSource == null) {
+            return "Pool de conexiones no inicializado";
+        }
+
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return "Pool de conexiones no iniciado";
+        }
+
+        return String.format(
+                "Estadísticas del Pool de Conexiones:\n" +
+                        "Conexiones Activas: %d\n" +
+                        "Conexiones Inactivas: %d\n" +
+                        "Conexiones Totales: %d\n" +
+                        "Hilos Esperando Conexión: %d\n" +
+                        "Tamaño Máximo: %d",
+                pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(), dataSource.getMaximumPoolSize());
+    }
+
+    // Cerrar el pool liberando todas las conexiones
+    public static void close() {
+        if (dataSource != null && !dataSource.isClosed()) {
+            dataSource.close();
+        }
     }
 }
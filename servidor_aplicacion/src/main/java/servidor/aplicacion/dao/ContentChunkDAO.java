@@ -0,0 +1,172 @@
+package servidor.aplicacion.dao;
+
+import servidor.aplicacion.config.DatabaseConnection;
+import servidor.aplicacion.model.ContentChunk;
+import servidor.aplicacion.model.ContentLocation;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Contenidos de chunks deduplicados por hash con su contador de referencias
+public class ContentChunkDAO {
+
+    private Connection getConnection() throws SQLException {
+        return DatabaseConnection.getConnection();
+    }
+
+    // Contenido con ese hash guardado con la política indicada, o null si no existe
+    public ContentChunk findByHash(String hash, String redundancy) throws SQLException {
+        String sql = "SELECT * FROM content_chunks WHERE hash = ? AND redundancy = ?";
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, hash);
+            pstmt.setString(2, redundancy);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapResultSetToContentChunk(rs);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Registra una referencia a un contenido: lo crea con una referencia o,
+     * si otra subida lo creó antes, incrementa su contador. Devuelve el
+     * contenido con su ID.
+     */
+    public ContentChunk register(ContentChunk content) throws SQLException {
+        String sql = "INSERT INTO content_chunks (hash, redundancy, size, ref_count, created_at) VALUES (?, ?, ?, 1, NOW()) " +
+                "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, id = LAST_INSERT_ID(id)";
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, content.getHash());
+            pstmt.setString(2, content.getRedundancy());
+            pstmt.setInt(3, content.getSize());
+            pstmt.executeUpdate();
+
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    content.setId(generatedKeys.getLong(1));
+                } else {
+                    throw new SQLException("Registro de contenido fallido, no se obtuvo ID.");
+                }
+            }
+        }
+
+        return content;
+    }
+
+    // Añade una referencia a un contenido existente; false si ya no tenía referencias y se está eliminando
+    public boolean addReference(long contentId) throws SQLException {
+        String sql = "UPDATE content_chunks SET ref_count = ref_count + 1 WHERE id = ? AND ref_count > 0";
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, contentId);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Quita una referencia y devuelve las que quedan. Si no queda ninguna, el
+     * contenido se elimina en la misma transacción y quien llama debe borrar
+     * de los nodos todas sus copias (findLocations).
+     */
+    public int release(long contentId) throws SQLException {
+        try (Connection conn = getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                int remaining = 0;
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT ref_count FROM content_chunks WHERE id = ? FOR UPDATE")) {
+                    pstmt.setLong(1, contentId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            remaining = Math.max(0, rs.getInt("ref_count") - 1);
+                        }
+                    }
+                }
+
+                String sql = remaining > 0
+                        ? "UPDATE content_chunks SET ref_count = ref_count - 1 WHERE id = ?"
+                        : "DELETE FROM content_chunks WHERE id = ?";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setLong(1, contentId);
+                    pstmt.executeUpdate();
+                }
+
+                conn.commit();
+                return remaining;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // Todas las copias de un contenido en los nodos, las haya guardado la subida que sea
+    public List<ContentLocation> findLocations(long contentId) throws SQLException {
+        String sql = "SELECT * FROM content_locations WHERE content_id = ?";
+        List<ContentLocation> locations = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, contentId);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    locations.add(new ContentLocation(rs.getLong("content_id"), rs.getLong("node_id"),
+                            rs.getString("storage_id"), rs.getInt("storage_index")));
+                }
+            }
+        }
+
+        return locations;
+    }
+
+    // Olvida copias ya borradas de los nodos
+    public void deleteLocations(List<ContentLocation> locations) throws SQLException {
+        if (locations.isEmpty()) {
+            return;
+        }
+        String sql = "DELETE FROM content_locations WHERE content_id = ? AND node_id = ? AND storage_id = ? AND storage_index = ?";
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (ContentLocation location : locations) {
+                pstmt.setLong(1, location.getContentId());
+                pstmt.setLong(2, location.getNodeId());
+                pstmt.setString(3, location.getStorageId());
+                pstmt.setInt(4, location.getStorageIndex());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private ContentChunk mapResultSetToContentChunk(ResultSet rs) throws SQLException {
+        ContentChunk content = new ContentChunk();
+        content.setId(rs.getLong("id"));
+        content.setHash(rs.getString("hash"));
+        content.setRedundancy(rs.getString("redundancy"));
+        content.setSize(rs.getInt("size"));
+        content.setRefCount(rs.getInt("ref_count"));
+        content.setCreatedAt(rs.getTimestamp("created_at"));
+        return content;
+    }
+}
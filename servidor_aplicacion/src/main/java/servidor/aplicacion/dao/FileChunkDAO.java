@@ -1,11 +1,15 @@
 package servidor.aplicacion.dao;
 
 import servidor.aplicacion.config.DatabaseConnection;
+import servidor.aplicacion.model.ChunkReplica;
 import servidor.aplicacion.model.FileChunk;
+import servidor.aplicacion.model.Node;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 // NO TOCAR AÚN
 public class FileChunkDAO {
 
@@ -14,8 +18,8 @@ public class FileChunkDAO {
     }
 
     public FileChunk save(FileChunk chunk) throws SQLException {
-        String sql = "INSERT INTO file_chunks (file_id, node_id, chunk_index, checksum, replicated, created_at) " +
-                "VALUES (?, ?, ?, ?, ?, NOW())";
+        String sql = "INSERT INTO file_chunks (file_id, node_id, chunk_index, fragment_index, size, codec, raw_size, content_id, " +
+                "checksum, digest, replicated, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
 
         try (Connection conn = getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -23,8 +27,14 @@ public class FileChunkDAO {
             pstmt.setLong(1, chunk.getFileId());
             pstmt.setLong(2, chunk.getNodeId());
             pstmt.setInt(3, chunk.getChunkIndex());
-            pstmt.setString(4, chunk.getChecksum());
-            pstmt.setBoolean(5, chunk.isReplicated());
+            pstmt.setObject(4, chunk.getFragmentIndex());
+            pstmt.setInt(5, chunk.getSize());
+            pstmt.setString(6, chunk.getCodec());
+            pstmt.setInt(7, chunk.getRawSize());
+            pstmt.setObject(8, chunk.getContentId());
+            pstmt.setString(9, chunk.getChecksum());
+            pstmt.setBytes(10, chunk.getDigest());
+            pstmt.setBoolean(11, chunk.isReplicated());
 
             int affectedRows = pstmt.executeUpdate();
 
@@ -39,11 +49,68 @@ public class FileChunkDAO {
                     throw new SQLException("Creación de chunk fallida, no se obtuvo ID.");
                 }
             }
+
+            saveContentLocations(conn, List.of(chunk));
         }
 
         return chunk;
     }
 
+    // Inserta varios chunks con batching JDBC dentro de una única transacción
+    public List<FileChunk> saveAll(List<FileChunk> chunks) throws SQLException {
+        if (chunks.isEmpty()) {
+            return chunks;
+        }
+
+        String sql = "INSERT INTO file_chunks (file_id, node_id, chunk_index, fragment_index, size, codec, raw_size, content_id, " +
+                "checksum, digest, replicated, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
+
+        try (Connection conn = getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (FileChunk chunk : chunks) {
+                    pstmt.setLong(1, chunk.getFileId());
+                    pstmt.setLong(2, chunk.getNodeId());
+                    pstmt.setInt(3, chunk.getChunkIndex());
+                    pstmt.setObject(4, chunk.getFragmentIndex());
+                    pstmt.setInt(5, chunk.getSize());
+                    pstmt.setString(6, chunk.getCodec());
+                    pstmt.setInt(7, chunk.getRawSize());
+                    pstmt.setObject(8, chunk.getContentId());
+                    pstmt.setString(9, chunk.getChecksum());
+                    pstmt.setBytes(10, chunk.getDigest());
+                    pstmt.setBoolean(11, chunk.isReplicated());
+                    pstmt.addBatch();
+                }
+
+                int[] results = pstmt.executeBatch();
+                if (results.length != chunks.size()) {
+                    throw new SQLException("Creación de chunks fallida, filas esperadas: " + chunks.size()
+                            + ", obtenidas: " + results.length);
+                }
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    int i = 0;
+                    while (generatedKeys.next() && i < chunks.size()) {
+                        chunks.get(i++).setId(generatedKeys.getInt(1));
+                    }
+                }
+
+                saveContentLocations(conn, chunks);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+
+        return chunks;
+    }
+
     public List<FileChunk> findByFileId(long fileId) {
         String sql = "SELECT * FROM file_chunks WHERE file_id = ? ORDER BY chunk_index";
         List<FileChunk> chunks = new ArrayList<>();
@@ -65,6 +132,87 @@ public class FileChunkDAO {
         return chunks;
     }
 
+    // Plan de réplicas de un archivo (índice de chunk -> réplicas con su nodo) en una sola consulta
+    public Map<Integer, List<ChunkReplica>> findReplicasByFileId(long fileId) {
+        String sql = "SELECT fc.*, cc.hash AS content_hash, n.ip, n.port, n.status, n.last_heartbeat FROM file_chunks fc " +
+                "JOIN nodes n ON n.id = fc.node_id LEFT JOIN content_chunks cc ON cc.id = fc.content_id " +
+                "WHERE fc.file_id = ? ORDER BY fc.chunk_index, fc.fragment_index, fc.id";
+        Map<Integer, List<ChunkReplica>> replicas = new LinkedHashMap<>();
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, fileId);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    FileChunk chunk = mapResultSetToFileChunk(rs);
+                    chunk.setContentHash(rs.getString("content_hash"));
+                    Node node = new Node();
+                    node.setId(chunk.getNodeId());
+                    node.setIp(rs.getString("ip"));
+                    node.setPort(rs.getInt("port"));
+                    node.setStatus(rs.getInt("status"));
+                    Timestamp lastHeartbeat = rs.getTimestamp("last_heartbeat");
+                    if (lastHeartbeat != null) {
+                        node.setLastHeartbeat(lastHeartbeat.toLocalDateTime());
+                    }
+
+                    replicas.computeIfAbsent(chunk.getChunkIndex(), index -> new ArrayList<>())
+                            .add(new ChunkReplica(chunk, node));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        return replicas;
+    }
+
+    // Registra en content_locations las copias de contenidos deduplicados; las ya registradas se ignoran
+    private void saveContentLocations(Connection conn, List<FileChunk> chunks) throws SQLException {
+        String sql = "INSERT IGNORE INTO content_locations (content_id, node_id, storage_id, storage_index) VALUES (?, ?, ?, ?)";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (FileChunk chunk : chunks) {
+                if (chunk.getContentId() == null || chunk.getContentHash() == null) {
+                    continue;
+                }
+                pstmt.setLong(1, chunk.getContentId());
+                pstmt.setLong(2, chunk.getNodeId());
+                pstmt.setString(3, chunk.getStorageId());
+                pstmt.setInt(4, chunk.getStorageIndex());
+                pstmt.addBatch();
+                pending++;
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    // Copias de un contenido deduplicado (una por nodo y fragmento) registradas por cualquier archivo
+    public List<FileChunk> findLocationsByContentId(long contentId) throws SQLException {
+        String sql = "SELECT fc.* FROM file_chunks fc JOIN (SELECT MIN(id) AS id FROM file_chunks " +
+                "WHERE content_id = ? GROUP BY node_id, fragment_index) l ON l.id = fc.id ORDER BY fc.fragment_index, fc.id";
+        List<FileChunk> chunks = new ArrayList<>();
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, contentId);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    chunks.add(mapResultSetToFileChunk(rs));
+                }
+            }
+        }
+
+        return chunks;
+    }
+
     public List<FileChunk> findByFileIdAndChunkNumber(Long fileId, Integer chunkIndex) {
         String sql = "SELECT * FROM file_chunks WHERE file_id = ? AND chunk_index = ?";
         List<FileChunk> chunks = new ArrayList<>();
@@ -235,7 +383,19 @@ public class FileChunkDAO {
         chunk.setFileId(rs.getLong("file_id"));
         chunk.setNodeId(rs.getLong("node_id"));
         chunk.setChunkIndex(rs.getInt("chunk_index"));
+        chunk.setFragmentIndex(rs.getObject("fragment_index", Integer.class));
+        Integer size = rs.getObject("size", Integer.class);
+        if (size != null) {
+            chunk.setSize(size);
+        }
+        chunk.setCodec(rs.getString("codec"));
+        Integer rawSize = rs.getObject("raw_size", Integer.class);
+        if (rawSize != null) {
+            chunk.setRawSize(rawSize);
+        }
+        chunk.setContentId(rs.getObject("content_id", Long.class));
         chunk.setChecksum(rs.getString("checksum"));
+        chunk.setDigest(rs.getBytes("digest"));
         chunk.setReplicated(rs.getBoolean("replicated"));
         chunk.setCreatedAt(rs.getTimestamp("created_at"));
         return chunk;
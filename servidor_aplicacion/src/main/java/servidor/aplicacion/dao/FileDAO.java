@@ -14,7 +14,7 @@ public class FileDAO {
     }
 
     public File save(File file) throws SQLException {
-        String sql = "INSERT INTO files (name, parent_id, owner_id, type, size) VALUES (?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO files (name, parent_id, owner_id, type, size, redundancy) VALUES (?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -24,6 +24,7 @@ public class FileDAO {
             pstmt.setLong(3, file.getOwnerId());
             pstmt.setInt(4, file.getType());
             pstmt.setLong(5, file.getSize());
+            pstmt.setString(6, file.getRedundancy());
 
             int affectedRows = pstmt.executeUpdate();
 
@@ -105,7 +106,7 @@ public class FileDAO {
     }
 
     public File update(File file) throws SQLException {
-        String sql = "UPDATE files SET name = ?, parent_id = ?, owner_id = ?, type = ?, size = ? WHERE id = ?";
+        String sql = "UPDATE files SET name = ?, parent_id = ?, owner_id = ?, type = ?, size = ?, redundancy = ? WHERE id = ?";
 
         try (Connection conn = getConnection();
                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
@@ -115,7 +116,8 @@ public class FileDAO {
             pstmt.setLong(3, file.getOwnerId());
             pstmt.setInt(4, file.getType());
             pstmt.setLong(5, file.getSize());
-            pstmt.setLong(6, file.getId());
+            pstmt.setString(6, file.getRedundancy());
+            pstmt.setLong(7, file.getId());
 
             int affectedRows = pstmt.executeUpdate();
 
@@ -151,6 +153,7 @@ public class FileDAO {
         file.setOwnerId(rs.getLong("owner_id"));
         file.setType(rs.getInt("type"));
         file.setSize(rs.getLong("size"));
+        file.setRedundancy(rs.getString("redundancy"));
         file.setCreatedAt(rs.getTimestamp("created_at"));
         file.setUpdatedAt(rs.getTimestamp("updated_at"));
         return file;
@@ -0,0 +1,58 @@
+package servidor.aplicacion.dto;
+
+import java.io.Serializable;
+
+// Chunk enviado a un nodo en las operaciones por lotes (data es null cuando solo se identifica el chunk)
+public class ChunkTransferDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String fileId;
+    private int chunkNumber;
+    private byte[] data;
+
+    public ChunkTransferDTO() {
+    }
+
+    public ChunkTransferDTO(String fileId, int chunkNumber) {
+        this(fileId, chunkNumber, null);
+    }
+
+    public ChunkTransferDTO(String fileId, int chunkNumber, byte[] data) {
+        this.fileId = fileId;
+        this.chunkNumber = chunkNumber;
+        this.data = data;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
+    public int getChunkNumber() {
+        return chunkNumber;
+    }
+
+    public void setChunkNumber(int chunkNumber) {
+        this.chunkNumber = chunkNumber;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkTransferDTO{" +
+                "fileId='" + fileId + '\'' +
+                ", chunkNumber=" + chunkNumber +
+                ", size=" + (data != null ? data.length : 0) +
+                '}';
+    }
+}
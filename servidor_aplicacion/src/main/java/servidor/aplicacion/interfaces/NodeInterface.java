@@ -1,5 +1,7 @@
 package servidor.aplicacion.interfaces;
 
+import servidor.aplicacion.dto.ChunkTransferDTO;
+
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
@@ -16,6 +18,18 @@ public interface NodeInterface extends Remote {
 
     List<String> listStoredFiles() throws RemoteException;
 
+    // Operaciones por lotes: una sola llamada RMI por nodo
+    boolean[] storeFileChunks(List<ChunkTransferDTO> chunks) throws RemoteException;
+
+    List<byte[]> retrieveFileChunks(List<ChunkTransferDTO> chunks) throws RemoteException;
+
+    int deleteFileChunks(String fileId) throws RemoteException;
+
+    boolean[] hasFiles(List<ChunkTransferDTO> chunks) throws RemoteException;
+
+    // Puerto del plano de datos binario para PUT/GET/DELETE de chunks (-1 si no hay)
+    int getDataPort() throws RemoteException;
+
     // Operaciones de estado del nodo
     String getNodeStatus() throws RemoteException;
 
@@ -37,4 +51,8 @@ public interface NodeInterface extends Remote {
 
     // Replicación
     boolean replicateChunk(String fileId, int chunkNumber, byte[] data, String targetNodeUrl) throws RemoteException;
+
+    // Replicación en cadena: guarda el chunk y lo propaga a los nodos siguientes; una confirmación por nodo
+    boolean[] storeFileChunkChain(String fileId, int chunkNumber, byte[] data, List<String> downstreamUrls)
+            throws RemoteException;
 }
@@ -7,38 +7,73 @@ import servidor.aplicacion.model.Node;
 import java.rmi.Naming;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 // NO TOCAR, YA FUNCIONA BIEN!!!!!!!
+// La vista de nodos vive en memoria: las lecturas no tocan la BD y las
+// escrituras de estado/heartbeat se persisten en segundo plano (write-behind)
 public class NodeManager {
     private static final Logger logger = Logger.getLogger(NodeManager.class.getName());
     private final NodeDAO nodeDAO;
     private final ScheduledExecutorService scheduler;
+    // Un solo hilo serializa las escrituras diferidas y las recargas desde BD
+    private final ExecutorService dbWriter;
+    private final List<NodeStatusListener> listeners;
     private static final int HEARTBEAT_TIMEOUT_MINUTES = 5;
+    private static final int SNAPSHOT_REFRESH_SECONDS = 30;
+    private static final int CAPACITY_POLL_SECONDS = 15;
+
+    // Instantánea inmutable de nodos por ID; se reemplaza completa en cada cambio
+    private volatile Map<Long, Node> nodesById;
 
     public NodeManager() {
         this.nodeDAO = new NodeDAO();
         this.scheduler = Executors.newScheduledThreadPool(2);
+        this.dbWriter = Executors.newSingleThreadExecutor();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.nodesById = Map.of();
+
+        // Cargar la vista inicial de nodos
+        refreshFromDatabase();
 
         // Iniciar el monitoreo de nodos
         startNodeHealthMonitoring();
     }
 
+    // Suscribirse a las transiciones online/offline de los nodos
+    public void addListener(NodeStatusListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(NodeStatusListener listener) {
+        listeners.remove(listener);
+    }
+
     // Registrar un nuevo nodo
     public Node registerNode(String ip, int port) {
         try {
             // Verificar si el nodo ya existe
             if (nodeDAO.nodeExists(ip, port)) {
                 logger.warning("Nodo ya existe: " + ip + ":" + port);
-                return nodeDAO.getNodeByIpAndPort(ip, port);
+                Node existing = nodeDAO.getNodeByIpAndPort(ip, port);
+                applyNode(existing);
+                return existing;
             }
 
             Node node = new Node(ip, port);
             Node registeredNode = nodeDAO.registerNode(node);
+            applyNode(registeredNode);
 
             logger.info("Nodo registrado exitosamente: " + ip + ":" + port + " con ID: " + registeredNode.getId());
             return registeredNode;
@@ -51,12 +86,24 @@ public class NodeManager {
 
     // Obtener todos los nodos online
     public List<Node> getOnlineNodes() {
-        return nodeDAO.getOnlineNodes();
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : nodesById.values()) {
+            if (node.isOnline()) {
+                nodes.add(new Node(node));
+            }
+        }
+        nodes.sort(Comparator.comparing(Node::getId));
+        return nodes;
     }
 
     // Obtener todos los nodos
     public List<Node> getAllNodes() {
-        return nodeDAO.getAllNodes();
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : nodesById.values()) {
+            nodes.add(new Node(node));
+        }
+        nodes.sort(Comparator.comparing(Node::getId));
+        return nodes;
     }
 
     // Seleccionar un nodo para operaciones
@@ -84,36 +131,33 @@ public class NodeManager {
     }
 
     public boolean updateNodeHeartbeat(Long nodeId) {
-        try {
-            boolean updated = nodeDAO.updateHeartbeat(nodeId);
-            if (updated) {
-                logger.fine("Heartbeat actualizado para el nodo ID: " + nodeId);
-            }
-            return updated;
-        } catch (Exception e) {
-            logger.warning("Error al actualizar heartbeat para el nodo ID " + nodeId + ": " + e.getMessage());
+        Node updated = updateNode(nodeId, node -> node.updateHeartbeat());
+        if (updated == null) {
             return false;
         }
+
+        writeBehind(() -> {
+            if (nodeDAO.updateHeartbeat(nodeId)) {
+                logger.fine("Heartbeat actualizado para el nodo ID: " + nodeId);
+            }
+        }, "actualizar heartbeat para el nodo ID " + nodeId);
+        return true;
     }
 
     // Marcar un nodo como offline
     public boolean markNodeAsOffline(Long nodeId) {
-        try {
-            return nodeDAO.updateNodeStatus(nodeId, Node.STATUS_OFFLINE, LocalDateTime.now());
-        } catch (Exception e) {
-            logger.warning("Error al marcar nodo como offline: " + e.getMessage());
-            return false;
-        }
+        return changeNodeStatus(nodeId, Node.STATUS_OFFLINE);
     }
 
     // Marcar un nodo como online
     public boolean markNodeAsOnline(Long nodeId) {
-        try {
-            return nodeDAO.updateNodeStatus(nodeId, Node.STATUS_ONLINE, LocalDateTime.now());
-        } catch (Exception e) {
-            logger.warning("Error al marcar nodo como online: " + e.getMessage());
-            return false;
-        }
+        return changeNodeStatus(nodeId, Node.STATUS_ONLINE);
+    }
+
+    // Consulta en memoria del estado de un nodo, sin acceso a BD
+    public boolean isNodeOnline(Long nodeId) {
+        Node node = nodesById.get(nodeId);
+        return node != null && node.isOnline();
     }
 
     // Verificar si un nodo está disponible
@@ -145,7 +189,7 @@ public class NodeManager {
 
     // Obtener estadísticas de todos los nodos
     public String getNodesStatistics() {
-        List<Node> allNodes = nodeDAO.getAllNodes();
+        List<Node> allNodes = getAllNodes();
         long totalNodes = allNodes.size();
         long onlineNodes = allNodes.stream().filter(Node::isOnline).count();
         long offlineNodes = allNodes.stream().filter(Node::isOffline).count();
@@ -191,6 +235,38 @@ public class NodeManager {
     // Iniciar monitoreo de salud de nodos
     private void startNodeHealthMonitoring() {
         scheduler.scheduleAtFixedRate(this::checkNodesHealth, 1, 2, TimeUnit.MINUTES);
+        // Recargar la vista desde BD para ver nodos registrados por otros procesos
+        scheduler.scheduleAtFixedRate(() -> dbWriter.execute(this::refreshFromDatabase),
+                SNAPSHOT_REFRESH_SECONDS, SNAPSHOT_REFRESH_SECONDS, TimeUnit.SECONDS);
+        // Consultar periódicamente la capacidad de cada nodo para la ubicación de réplicas
+        scheduler.scheduleAtFixedRate(this::pollNodesCapacity, 0, CAPACITY_POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Consultar espacio libre y usado de los nodos online; la respuesta cuenta como heartbeat
+    private void pollNodesCapacity() {
+        for (Node node : getOnlineNodes()) {
+            try {
+                NodeInterface nodeInterface = (NodeInterface) Naming.lookup(node.getRmiUrl());
+                long availableSpace = nodeInterface.getAvailableSpace();
+                long usedSpace = nodeInterface.getUsedSpace();
+                updateNodeCapacity(node.getId(), availableSpace, usedSpace);
+            } catch (Exception e) {
+                logger.fine("No se pudo consultar la capacidad del nodo " + node.getIp() + ":" + node.getPort()
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Actualizar en memoria la capacidad reportada por un nodo
+    public boolean updateNodeCapacity(Long nodeId, long availableSpace, long usedSpace) {
+        Node updated = updateNode(nodeId, node -> {
+            node.setAvailableSpace(availableSpace);
+            node.setUsedSpace(usedSpace);
+        });
+        if (updated == null) {
+            return false;
+        }
+        return updateNodeHeartbeat(nodeId);
     }
 
     // Verificar la salud de todos los nodos
@@ -224,7 +300,8 @@ public class NodeManager {
 
     // Obtener nodo por ID
     public Node getNodeById(Long nodeId) {
-        return nodeDAO.getNodeById(nodeId);
+        Node node = nodesById.get(nodeId);
+        return node != null ? new Node(node) : null;
     }
 
     // Limpiar nodos inválidos (que no son de almacenamiento)
@@ -251,6 +328,122 @@ public class NodeManager {
         }
     }
 
+    // Recargar la instantánea completa desde la BD notificando transiciones
+    private void refreshFromDatabase() {
+        try {
+            List<Node> nodes = nodeDAO.getAllNodes();
+            for (Node node : nodes) {
+                // No pisar cambios en memoria más recientes que lo que ya llegó a la BD
+                Node current = nodesById.get(node.getId());
+                if (current != null && isNewerThan(current, node)) {
+                    continue;
+                }
+                applyNode(node);
+            }
+        } catch (Exception e) {
+            logger.warning("Error al recargar la vista de nodos desde BD: " + e.getMessage());
+        }
+    }
+
+    // La BD guarda el heartbeat con precisión de segundos
+    private boolean isNewerThan(Node inMemory, Node fromDatabase) {
+        if (inMemory.getLastHeartbeat() == null || fromDatabase.getLastHeartbeat() == null) {
+            return false;
+        }
+        return inMemory.getLastHeartbeat().truncatedTo(ChronoUnit.SECONDS)
+                .isAfter(fromDatabase.getLastHeartbeat().truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    // Cambiar el estado en memoria y persistirlo en segundo plano
+    private boolean changeNodeStatus(Long nodeId, int status) {
+        Node updated = updateNode(nodeId, node -> {
+            node.setStatus(status);
+            node.updateHeartbeat();
+        });
+        if (updated == null) {
+            return false;
+        }
+
+        LocalDateTime heartbeat = updated.getLastHeartbeat();
+        writeBehind(() -> nodeDAO.updateNodeStatus(nodeId, status, heartbeat),
+                "actualizar estado del nodo ID " + nodeId);
+        return true;
+    }
+
+    // Aplica una modificación sobre una copia del nodo y publica una nueva instantánea
+    private Node updateNode(Long nodeId, Consumer<Node> change) {
+        Node previous;
+        Node updated;
+        synchronized (this) {
+            previous = nodesById.get(nodeId);
+            if (previous == null) {
+                return null;
+            }
+            updated = new Node(previous);
+            change.accept(updated);
+            publish(updated);
+        }
+        notifyTransition(previous, updated);
+        return updated;
+    }
+
+    // Inserta o reemplaza un nodo leído de BD en la instantánea
+    private void applyNode(Node node) {
+        Node previous;
+        Node current = new Node(node);
+        synchronized (this) {
+            previous = nodesById.get(node.getId());
+            // La capacidad no se guarda en BD: conservar la última reportada
+            if (previous != null && !current.hasCapacityInfo()) {
+                current.setAvailableSpace(previous.getAvailableSpace());
+                current.setUsedSpace(previous.getUsedSpace());
+            }
+            publish(current);
+        }
+        notifyTransition(previous, current);
+    }
+
+    // Debe llamarse con el monitor tomado
+    private void publish(Node node) {
+        Map<Long, Node> next = new HashMap<>(nodesById);
+        next.put(node.getId(), node);
+        nodesById = Map.copyOf(next);
+    }
+
+    private void notifyTransition(Node previous, Node current) {
+        boolean wasOnline = previous != null && previous.isOnline();
+        if (wasOnline == current.isOnline()) {
+            return;
+        }
+
+        for (NodeStatusListener listener : listeners) {
+            try {
+                if (current.isOnline()) {
+                    listener.onNodeOnline(new Node(current));
+                } else {
+                    listener.onNodeOffline(new Node(current));
+                }
+            } catch (Exception e) {
+                logger.warning("Error notificando cambio de estado del nodo " + current.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Encola una escritura en BD sin bloquear al llamador
+    private void writeBehind(Runnable write, String description) {
+        try {
+            dbWriter.execute(() -> {
+                try {
+                    write.run();
+                } catch (Exception e) {
+                    logger.warning("Error al " + description + ": " + e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            logger.warning("No se pudo encolar la escritura para " + description + ": " + e.getMessage());
+        }
+    }
+
     // Cerrar el manager
     public void shutdown() {
         if (scheduler != null && !scheduler.isShutdown()) {
@@ -264,6 +457,18 @@ public class NodeManager {
                 Thread.currentThread().interrupt();
             }
         }
+        // Vaciar las escrituras pendientes antes de terminar
+        if (dbWriter != null && !dbWriter.isShutdown()) {
+            dbWriter.shutdown();
+            try {
+                if (!dbWriter.awaitTermination(5, TimeUnit.SECONDS)) {
+                    dbWriter.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                dbWriter.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
         logger.info("Cierre de NodeManager completado");
     }
 }
@@ -0,0 +1,13 @@
+package servidor.aplicacion.manager;
+
+import servidor.aplicacion.model.Node;
+
+// Recibe las transiciones de estado de los nodos detectadas por NodeManager
+public interface NodeStatusListener {
+
+    // El nodo pasó a ONLINE (o se registró ya online)
+    void onNodeOnline(Node node);
+
+    // El nodo dejó de estar ONLINE
+    void onNodeOffline(Node node);
+}
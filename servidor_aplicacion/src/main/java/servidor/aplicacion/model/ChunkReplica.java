@@ -0,0 +1,28 @@
+package servidor.aplicacion.model;
+
+// Réplica de un chunk junto con el nodo que la almacena
+public class ChunkReplica {
+    private final FileChunk chunk;
+    private final Node node;
+
+    public ChunkReplica(FileChunk chunk, Node node) {
+        this.chunk = chunk;
+        this.node = node;
+    }
+
+    public FileChunk getChunk() {
+        return chunk;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkReplica{" +
+                "chunk=" + chunk +
+                ", node=" + node +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package servidor.aplicacion.model;
+
+import java.sql.Timestamp;
+
+// Contenido de un chunk identificado por su hash SHA-256, compartido por todos los archivos que lo referencian
+public class ContentChunk {
+    private Long id;
+    private String hash;
+    private String redundancy;
+    private Integer size;
+    private Integer refCount;
+    private Timestamp createdAt;
+
+    public ContentChunk() {
+    }
+
+    public ContentChunk(String hash, String redundancy, Integer size) {
+        this.hash = hash;
+        this.redundancy = redundancy;
+        this.size = size;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public String getRedundancy() {
+        return redundancy;
+    }
+
+    public void setRedundancy(String redundancy) {
+        this.redundancy = redundancy;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Integer refCount) {
+        this.refCount = refCount;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Timestamp createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ContentChunk{" +
+                "id=" + id +
+                ", hash='" + hash + '\'' +
+                ", redundancy='" + redundancy + '\'' +
+                ", size=" + size +
+                ", refCount=" + refCount +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+package servidor.aplicacion.model;
+
+// Copia de un contenido deduplicado en un nodo, con la clave bajo la que el nodo la guarda
+public class ContentLocation {
+    private final long contentId;
+    private final long nodeId;
+    private final String storageId;
+    private final int storageIndex;
+
+    public ContentLocation(long contentId, long nodeId, String storageId, int storageIndex) {
+        this.contentId = contentId;
+        this.nodeId = nodeId;
+        this.storageId = storageId;
+        this.storageIndex = storageIndex;
+    }
+
+    public long getContentId() {
+        return contentId;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public String getStorageId() {
+        return storageId;
+    }
+
+    public int getStorageIndex() {
+        return storageIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "ContentLocation{" +
+                "contentId=" + contentId +
+                ", nodeId=" + nodeId +
+                ", storageId='" + storageId + '\'' +
+                ", storageIndex=" + storageIndex +
+                '}';
+    }
+}
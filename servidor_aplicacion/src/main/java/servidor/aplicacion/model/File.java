@@ -9,6 +9,8 @@ public class File {
     private Long ownerId;
     private Integer type; // 1: FILE, 2: DIR
     private Long size;
+    // Política de redundancia ("replica:2", "rs:4+2"); null usa la del directorio o la del servicio
+    private String redundancy;
     private Timestamp createdAt;
     private Timestamp updatedAt;
 
@@ -71,6 +73,14 @@ public class File {
         this.size = size;
     }
 
+    public String getRedundancy() {
+        return redundancy;
+    }
+
+    public void setRedundancy(String redundancy) {
+        this.redundancy = redundancy;
+    }
+
     public Timestamp getCreatedAt() {
         return createdAt;
     }
@@ -107,6 +117,7 @@ public class File {
                 ", ownerId=" + ownerId +
                 ", type=" + type +
                 ", size=" + size +
+                ", redundancy='" + redundancy + '\'' +
                 ", createdAt=" + createdAt +
                 ", updatedAt=" + updatedAt +
                 '}';
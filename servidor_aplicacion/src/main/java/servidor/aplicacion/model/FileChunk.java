@@ -7,8 +7,23 @@ public class FileChunk {
     private Long fileId;
     private Long nodeId;
     private Integer chunkIndex;
+    // SHA-256 en hexadecimal del chunk original (el del contenido si está deduplicado; null si no se calculó)
     private String checksum;
+    // Digest binario de los bytes guardados en el nodo (CRC32C o SHA-256 según su longitud)
+    private byte[] digest;
     private Boolean replicated;
+    // Fragmento Reed-Solomon que guarda esta fila (null si es una réplica completa)
+    private Integer fragmentIndex;
+    // Bytes guardados del chunk (comprimidos si tiene códec), para descartar el relleno de los fragmentos
+    private Integer size;
+    // Códec con el que se comprimió el chunk (null si se guardó sin comprimir)
+    private String codec;
+    // Bytes del chunk antes de comprimirlo
+    private Integer rawSize;
+    // Contenido deduplicado al que apunta esta fila (null si se guardó bajo la clave del archivo)
+    private Long contentId;
+    // Hash del contenido deduplicado; se obtiene de content_chunks al consultar
+    private String contentHash;
     private Timestamp createdAt;
 
     public FileChunk() {
@@ -106,6 +121,8 @@ public class FileChunk {
                 ", fileId=" + fileId +
                 ", nodeId=" + nodeId +
                 ", chunkIndex=" + chunkIndex +
+                ", fragmentIndex=" + fragmentIndex +
+                ", contentId=" + contentId +
                 ", checksum='" + checksum + '\'' +
                 ", replicated=" + replicated +
                 ", createdAt=" + createdAt +
@@ -125,6 +142,8 @@ public class FileChunk {
             return false;
         if (!nodeId.equals(fileChunk.nodeId))
             return false;
+        if (!java.util.Objects.equals(fragmentIndex, fileChunk.fragmentIndex))
+            return false;
         return chunkIndex.equals(fileChunk.chunkIndex);
     }
 
@@ -133,6 +152,7 @@ public class FileChunk {
         int result = fileId.hashCode();
         result = 31 * result + nodeId.hashCode();
         result = 31 * result + chunkIndex.hashCode();
+        result = 31 * result + java.util.Objects.hashCode(fragmentIndex);
         return result;
     }
     
@@ -153,10 +173,90 @@ public class FileChunk {
     }
     
     public int getSize() {
-        return 1024 * 1024; // 1MB
+        return size != null ? size : 1024 * 1024; // 1MB en chunks registrados sin tamaño
     }
     
     public void setSize(int size) {
+        this.size = size;
+    }
+    
+    public Integer getFragmentIndex() {
+        return fragmentIndex;
+    }
+    
+    public void setFragmentIndex(Integer fragmentIndex) {
+        this.fragmentIndex = fragmentIndex;
+    }
+    
+    public byte[] getDigest() {
+        return digest;
+    }
+    
+    public void setDigest(byte[] digest) {
+        this.digest = digest;
+    }
+    
+    public String getCodec() {
+        return codec;
+    }
+    
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+    
+    public boolean isCompressed() {
+        return codec != null && !"NONE".equals(codec);
+    }
+    
+    public int getRawSize() {
+        return rawSize != null ? rawSize : getSize();
+    }
+    
+    public void setRawSize(int rawSize) {
+        this.rawSize = rawSize;
+    }
+    
+    public boolean isFragment() {
+        return fragmentIndex != null;
+    }
+    
+    public Long getContentId() {
+        return contentId;
+    }
+    
+    public void setContentId(Long contentId) {
+        this.contentId = contentId;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    /**
+     * Identificador con el que el nodo guarda esta fila: el hash y el ID del
+     * contenido si está deduplicado, con el códec como sufijo para que dos
+     * subidas del mismo contenido con códecs distintos no se pisen. Con el ID,
+     * un contenido que se vuelve a registrar tras llegar a 0 referencias no
+     * comparte clave con las copias del anterior que aún se estén borrando.
+     */
+    public String getStorageId() {
+        if (contentHash != null) {
+            String contentKey = "c" + contentHash + "-" + contentId;
+            return isCompressed() ? contentKey + "-" + codec.toLowerCase() : contentKey;
+        }
+        return fileId + "_" + getStorageIndex();
+    }
+    
+    // Número con el que el nodo guarda esta fila: cada fragmento de un chunk ocupa su propia posición
+    public int getStorageIndex() {
+        if (contentHash != null) {
+            return fragmentIndex != null ? fragmentIndex : 0;
+        }
+        return fragmentIndex == null ? chunkIndex : chunkIndex * RedundancyPolicy.MAX_SHARDS + fragmentIndex;
     }
     
     public void setCreatedAt(java.time.LocalDateTime createdAt) {
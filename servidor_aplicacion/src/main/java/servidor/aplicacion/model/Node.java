@@ -8,6 +8,9 @@ public class Node {
     private int port;
     private int status; // 1: ONLINE, 2: OFFLINE, 3: MAINTENANCE
     private LocalDateTime lastHeartbeat;
+    // Capacidad reportada por el nodo (solo en memoria, -1 si se desconoce)
+    private long availableSpace = -1;
+    private long usedSpace = -1;
 
     public static final int STATUS_ONLINE = 1;
     public static final int STATUS_OFFLINE = 2;
@@ -24,6 +27,16 @@ public class Node {
         this.port = port;
     }
 
+    public Node(Node other) {
+        this.id = other.id;
+        this.ip = other.ip;
+        this.port = other.port;
+        this.status = other.status;
+        this.lastHeartbeat = other.lastHeartbeat;
+        this.availableSpace = other.availableSpace;
+        this.usedSpace = other.usedSpace;
+    }
+
     public Long getId() {
         return id;
     }
@@ -64,6 +77,34 @@ public class Node {
         this.lastHeartbeat = lastHeartbeat;
     }
 
+    public long getAvailableSpace() {
+        return availableSpace;
+    }
+
+    public void setAvailableSpace(long availableSpace) {
+        this.availableSpace = availableSpace;
+    }
+
+    public long getUsedSpace() {
+        return usedSpace;
+    }
+
+    public void setUsedSpace(long usedSpace) {
+        this.usedSpace = usedSpace;
+    }
+
+    public boolean hasCapacityInfo() {
+        return availableSpace >= 0 && usedSpace >= 0;
+    }
+
+    // Fracción ocupada del almacenamiento del nodo (0 si se desconoce)
+    public double getFillRatio() {
+        if (!hasCapacityInfo() || availableSpace + usedSpace == 0) {
+            return 0.0;
+        }
+        return (double) usedSpace / (availableSpace + usedSpace);
+    }
+
     public boolean isOnline() {
         return this.status == STATUS_ONLINE;
     }
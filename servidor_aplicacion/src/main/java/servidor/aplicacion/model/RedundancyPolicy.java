@@ -0,0 +1,110 @@
+package servidor.aplicacion.model;
+
+/**
+ * Política de redundancia de un archivo.
+ * - REPLICATION: cada chunk se guarda completo en N nodos ("replica:2")
+ * - ERASURE: cada chunk se divide en k fragmentos de datos más m de paridad
+ *   Reed-Solomon en k+m nodos distintos; basta con k para leerlo ("rs:4+2")
+ * Se guarda como texto en la columna files.redundancy; un directorio con
+ * política la hereda a los archivos que se suben dentro.
+ */
+public final class RedundancyPolicy {
+
+    public enum Scheme {
+        REPLICATION, ERASURE
+    }
+
+    // Límite de fragmentos por chunk en GF(2^8)
+    public static final int MAX_SHARDS = 256;
+
+    private final Scheme scheme;
+    private final int dataShards;
+    private final int parityShards;
+
+    private RedundancyPolicy(Scheme scheme, int dataShards, int parityShards) {
+        this.scheme = scheme;
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+    }
+
+    public static RedundancyPolicy replication(int replicas) {
+        if (replicas < 1) {
+            throw new IllegalArgumentException("Factor de replicación inválido: " + replicas);
+        }
+        return new RedundancyPolicy(Scheme.REPLICATION, replicas, 0);
+    }
+
+    public static RedundancyPolicy erasure(int dataShards, int parityShards) {
+        if (dataShards < 1 || parityShards < 1 || dataShards + parityShards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Configuración de erasure coding inválida: " + dataShards + "+" + parityShards);
+        }
+        return new RedundancyPolicy(Scheme.ERASURE, dataShards, parityShards);
+    }
+
+    // Interpreta "replica:N" o "rs:K+M"
+    public static RedundancyPolicy parse(String value) {
+        String text = value.trim().toLowerCase();
+        try {
+            if (text.startsWith("replica:")) {
+                return replication(Integer.parseInt(text.substring("replica:".length())));
+            }
+            if (text.startsWith("rs:")) {
+                String[] parts = text.substring("rs:".length()).split("\\+");
+                if (parts.length == 2) {
+                    return erasure(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo como política inválida
+        }
+        throw new IllegalArgumentException("Política de redundancia inválida: " + value);
+    }
+
+    public Scheme getScheme() {
+        return scheme;
+    }
+
+    public boolean isErasure() {
+        return scheme == Scheme.ERASURE;
+    }
+
+    // Réplicas completas de cada chunk (solo en REPLICATION)
+    public int getReplicas() {
+        return scheme == Scheme.REPLICATION ? dataShards : 1;
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    // Nodos distintos que necesita cada chunk
+    public int getNodesPerChunk() {
+        return dataShards + parityShards;
+    }
+
+    @Override
+    public String toString() {
+        return scheme == Scheme.REPLICATION
+                ? "replica:" + dataShards
+                : "rs:" + dataShards + "+" + parityShards;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        RedundancyPolicy that = (RedundancyPolicy) o;
+        return scheme == that.scheme && dataShards == that.dataShards && parityShards == that.parityShards;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * scheme.hashCode() + dataShards) + parityShards;
+    }
+}
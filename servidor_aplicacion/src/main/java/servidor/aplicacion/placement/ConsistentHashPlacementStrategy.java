@@ -0,0 +1,140 @@
+package servidor.aplicacion.placement;
+
+import servidor.aplicacion.model.Node;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ubicación por hashing consistente con nodos virtuales.
+ * - Cada nodo ocupa VIRTUAL_NODES posiciones del anillo, derivadas de su ID
+ * - Un chunk se ubica por el hash de "fileId:chunkIndex" y sus réplicas son
+ *   los siguientes nodos distintos en sentido horario
+ * - Cuando un nodo entra o sale solo cambia la ubicación de ~1/N de los chunks
+ */
+public class ConsistentHashPlacementStrategy implements PlacementStrategy {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    // Anillo construido para el último conjunto de nodos visto
+    private volatile Ring ring;
+
+    public ConsistentHashPlacementStrategy() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashPlacementStrategy(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        this.ring = new Ring(new long[0], new long[0], new long[0]);
+    }
+
+    @Override
+    public List<Node> selectNodes(List<Node> availableNodes, long fileId, int chunkIndex, int replicas) {
+        return walkRing(availableNodes, fileId, chunkIndex, replicas);
+    }
+
+    // Todos los nodos disponibles en el orden de preferencia del anillo para el chunk
+    public List<Node> preferenceList(List<Node> availableNodes, long fileId, int chunkIndex) {
+        return walkRing(availableNodes, fileId, chunkIndex, availableNodes.size());
+    }
+
+    private List<Node> walkRing(List<Node> availableNodes, long fileId, int chunkIndex, int limit) {
+        List<Node> selectedNodes = new ArrayList<>();
+        if (availableNodes.isEmpty() || limit <= 0) {
+            return selectedNodes;
+        }
+
+        Map<Long, Node> nodesById = new HashMap<>();
+        for (Node node : availableNodes) {
+            nodesById.put(node.getId(), node);
+        }
+
+        Ring current = ringFor(nodesById);
+        int position = current.indexOf(hash(fileId + ":" + chunkIndex));
+
+        // Recorrer el anillo en sentido horario hasta reunir nodos distintos
+        for (int i = 0; i < current.size() && selectedNodes.size() < limit; i++) {
+            long nodeId = current.owners[(position + i) % current.size()];
+            Node node = nodesById.remove(nodeId);
+            if (node != null) {
+                selectedNodes.add(node);
+            }
+        }
+
+        return selectedNodes;
+    }
+
+    // Reutiliza el anillo mientras el conjunto de nodos no cambie
+    private Ring ringFor(Map<Long, Node> nodesById) {
+        long[] nodeIds = nodesById.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        Ring current = ring;
+        if (Arrays.equals(current.nodeIds, nodeIds)) {
+            return current;
+        }
+
+        long[] points = new long[nodeIds.length * virtualNodes];
+        long[] owners = new long[points.length];
+        long[][] entries = new long[points.length][];
+        int n = 0;
+        for (long nodeId : nodeIds) {
+            for (int v = 0; v < virtualNodes; v++) {
+                entries[n++] = new long[] { hash(nodeId + "#" + v), nodeId };
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = entries[i][1];
+        }
+
+        Ring rebuilt = new Ring(nodeIds, points, owners);
+        ring = rebuilt;
+        return rebuilt;
+    }
+
+    // FNV-1a de 64 bits seguido del finalizador de MurmurHash3 para dispersar bien los bits
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Anillo inmutable: posiciones ordenadas y el nodo dueño de cada una
+    private static class Ring {
+        final long[] nodeIds;
+        final long[] points;
+        final long[] owners;
+
+        Ring(long[] nodeIds, long[] points, long[] owners) {
+            this.nodeIds = nodeIds;
+            this.points = points;
+            this.owners = owners;
+        }
+
+        int size() {
+            return points.length;
+        }
+
+        // Primera posición con hash >= h, volviendo al inicio al final del anillo
+        int indexOf(long h) {
+            int index = Arrays.binarySearch(points, h);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == points.length ? 0 : index;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package servidor.aplicacion.placement;
+
+import servidor.aplicacion.model.Node;
+import servidor.aplicacion.rmi.nodes.NodeClientPool;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ubicación que tiene en cuenta capacidad y carga de los nodos.
+ * - Parte del orden de preferencia del anillo de hashing consistente
+ * - Descarta los nodos por encima del umbral de llenado mientras haya otros
+ * - Entre los primeros candidatos del anillo elige los de menor costo, según
+ *   espacio libre, operaciones en vuelo y latencia reciente (EWMA)
+ * Al evaluar solo unos pocos candidatos más que las réplicas pedidas, la
+ * mayoría de los chunks sigue ubicándose donde indica el anillo.
+ */
+public class LoadAwarePlacementStrategy implements PlacementStrategy {
+
+    public static final double DEFAULT_MAX_FILL_RATIO = 0.90;
+    // Candidatos extra evaluados además de las réplicas pedidas
+    private static final int EXTRA_CANDIDATES = 1;
+    // Latencia de referencia para normalizar el costo (ms)
+    private static final double REFERENCE_LATENCY_MILLIS = 50.0;
+
+    private final ConsistentHashPlacementStrategy ring;
+    private final NodeClientPool nodeClientPool;
+    private final double maxFillRatio;
+
+    public LoadAwarePlacementStrategy(ConsistentHashPlacementStrategy ring, NodeClientPool nodeClientPool) {
+        this(ring, nodeClientPool, DEFAULT_MAX_FILL_RATIO);
+    }
+
+    public LoadAwarePlacementStrategy(ConsistentHashPlacementStrategy ring, NodeClientPool nodeClientPool,
+            double maxFillRatio) {
+        this.ring = ring;
+        this.nodeClientPool = nodeClientPool;
+        this.maxFillRatio = maxFillRatio;
+    }
+
+    @Override
+    public List<Node> selectNodes(List<Node> availableNodes, long fileId, int chunkIndex, int replicas) {
+        List<Node> preference = ring.preferenceList(availableNodes, fileId, chunkIndex);
+
+        // Separar los nodos por debajo del umbral de llenado, conservando el orden del anillo
+        List<Node> eligible = new ArrayList<>();
+        List<Node> nearlyFull = new ArrayList<>();
+        for (Node node : preference) {
+            if (node.getFillRatio() > maxFillRatio) {
+                nearlyFull.add(node);
+            } else {
+                eligible.add(node);
+            }
+        }
+
+        // Elegir las réplicas de menor costo entre los primeros candidatos elegibles
+        int candidateCount = Math.min(eligible.size(), replicas + EXTRA_CANDIDATES);
+        List<Node> candidates = new ArrayList<>(eligible.subList(0, candidateCount));
+        candidates.sort(Comparator.comparingDouble(this::cost));
+
+        List<Node> selectedNodes = new ArrayList<>(candidates.subList(0, Math.min(replicas, candidates.size())));
+
+        // Si no alcanzan los nodos elegibles, completar con los menos llenos
+        if (selectedNodes.size() < replicas) {
+            for (Node node : eligible.subList(candidateCount, eligible.size())) {
+                if (selectedNodes.size() == replicas) {
+                    break;
+                }
+                selectedNodes.add(node);
+            }
+            nearlyFull.sort(Comparator.comparingDouble(Node::getFillRatio));
+            for (Node node : nearlyFull) {
+                if (selectedNodes.size() == replicas) {
+                    break;
+                }
+                selectedNodes.add(node);
+            }
+        }
+
+        return selectedNodes;
+    }
+
+    // Costo relativo de enviar un chunk al nodo; menor es mejor
+    private double cost(Node node) {
+        double freeRatio = node.hasCapacityInfo() ? Math.max(1.0 - node.getFillRatio(), 0.01) : 1.0;
+        double latency = Math.max(nodeClientPool.getLatencyMillis(node.getId()), 0.0);
+        int inFlight = nodeClientPool.getInFlight(node.getId());
+
+        return (1 + inFlight) * (1 + latency / REFERENCE_LATENCY_MILLIS) / freeRatio;
+    }
+}
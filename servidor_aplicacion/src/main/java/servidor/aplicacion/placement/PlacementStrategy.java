@@ -0,0 +1,12 @@
+package servidor.aplicacion.placement;
+
+import servidor.aplicacion.model.Node;
+
+import java.util.List;
+
+// Estrategia de ubicación de réplicas de chunks en nodos de almacenamiento
+public interface PlacementStrategy {
+
+    // Selecciona hasta 'replicas' nodos distintos para el chunk indicado
+    List<Node> selectNodes(List<Node> availableNodes, long fileId, int chunkIndex, int replicas);
+}
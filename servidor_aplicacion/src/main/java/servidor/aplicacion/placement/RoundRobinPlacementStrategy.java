@@ -0,0 +1,22 @@
+package servidor.aplicacion.placement;
+
+import servidor.aplicacion.model.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Selección round-robin con offset por índice de chunk (estrategia original)
+public class RoundRobinPlacementStrategy implements PlacementStrategy {
+
+    @Override
+    public List<Node> selectNodes(List<Node> availableNodes, long fileId, int chunkIndex, int replicas) {
+        List<Node> selectedNodes = new ArrayList<>();
+
+        for (int i = 0; i < replicas && i < availableNodes.size(); i++) {
+            int nodeIndex = (chunkIndex + i) % availableNodes.size();
+            selectedNodes.add(availableNodes.get(nodeIndex));
+        }
+
+        return selectedNodes;
+    }
+}
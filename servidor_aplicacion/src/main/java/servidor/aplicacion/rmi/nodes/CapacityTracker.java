@@ -0,0 +1,112 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Contabilidad de espacio de un nodo basada en reservas.
+ * - Antes de escribir se reserva el espacio con una operación atómica; si la
+ *   escritura falla la reserva se libera
+ * - Los valores se leen de contadores en memoria, sin llamadas al sistema
+ * - Periódicamente se reconcilia con el espacio real del sistema de archivos,
+ *   descontando las reservas aún en curso
+ */
+public class CapacityTracker {
+    private static final Logger logger = Logger.getLogger(CapacityTracker.class.getName());
+
+    public static final int DEFAULT_RECONCILE_SECONDS = 10;
+
+    private final File storageDir;
+    private final AtomicLong available;
+    private final AtomicLong reserved;
+    private final LongAdder used;
+    private final ScheduledExecutorService reconciler;
+
+    public CapacityTracker(File storageDir) {
+        this.storageDir = storageDir;
+        this.available = new AtomicLong();
+        this.reserved = new AtomicLong();
+        this.used = new LongAdder();
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capacity-reconciler-" + storageDir.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Leer el espacio real y empezar a reconciliar periódicamente
+    public void start() {
+        reconcile();
+        int interval = Integer.getInteger("storage.capacity.reconcileSeconds", DEFAULT_RECONCILE_SECONDS);
+        reconciler.scheduleWithFixedDelay(this::reconcile, interval, interval, TimeUnit.SECONDS);
+    }
+
+    // Reservar espacio para una escritura; false si no alcanza
+    public boolean reserve(long bytes) {
+        while (true) {
+            long current = available.get();
+            if (current < bytes) {
+                return false;
+            }
+            if (available.compareAndSet(current, current - bytes)) {
+                reserved.addAndGet(bytes);
+                return true;
+            }
+        }
+    }
+
+    // La escritura reservada terminó: el espacio pasa a estar usado
+    public void commit(long bytes) {
+        reserved.addAndGet(-bytes);
+        used.add(bytes);
+    }
+
+    // La escritura reservada falló: devolver el espacio
+    public void release(long bytes) {
+        reserved.addAndGet(-bytes);
+        available.addAndGet(bytes);
+    }
+
+    public long getAvailable() {
+        return available.get();
+    }
+
+    public long getUsed() {
+        return used.sum();
+    }
+
+    // Fijar los valores informados externamente; se corrigen en la próxima reconciliación
+    public void override(long availableSpace, long usedSpace) {
+        available.set(availableSpace);
+        used.reset();
+        used.add(usedSpace);
+    }
+
+    // Ajustar los contadores al espacio real del sistema de archivos
+    public void reconcile() {
+        try {
+            long free = storageDir.getUsableSpace();
+            long total = storageDir.getTotalSpace();
+            if (total == 0) {
+                return; // El directorio no existe o no se pudo consultar
+            }
+
+            // Las reservas en curso todavía no se reflejan en el disco
+            available.set(free - reserved.get());
+            used.reset();
+            used.add(total - free);
+
+        } catch (SecurityException e) {
+            logger.warning("Failed to calculate disk space: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        reconciler.shutdownNow();
+    }
+}
@@ -0,0 +1,135 @@
+package servidor.aplicacion.rmi.nodes;
+
+import servidor.aplicacion.interfaces.NodeInterface;
+
+import java.net.URI;
+import java.rmi.Naming;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Reenvío de chunks a la siguiente réplica de una cadena de replicación.
+ * - Cachea por URL el stub RMI y la conexión al plano de datos de cada nodo
+ *   siguiente, en lugar de hacer Naming.lookup por chunk
+ * - El reenvío es asíncrono para que el nodo guarde su copia local a la vez
+ * - Usa PUT_CHAIN por el plano de datos y vuelve a RMI si no está disponible o falla
+ */
+public class ChainReplicator {
+    private static final Logger logger = Logger.getLogger(ChainReplicator.class.getName());
+
+    // Espera antes de reintentar el plano de datos de un nodo que no lo ofrece o falló
+    private static final long DATA_PLANE_RETRY_NANOS = 30_000_000_000L;
+
+    private final ConcurrentHashMap<String, Downstream> downstreams;
+    private final ExecutorService rmiForwarders;
+
+    public ChainReplicator() {
+        this.downstreams = new ConcurrentHashMap<>();
+        this.rmiForwarders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "chain-forwarder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Enviar el chunk al primer nodo de la cadena, que lo propaga al resto; una confirmación por nodo
+    public CompletableFuture<boolean[]> forward(String fileId, int chunkNumber, byte[] data, List<String> chain) {
+        String nextUrl = chain.get(0);
+        List<String> rest = chain.subList(1, chain.size());
+        Downstream downstream = downstreams.computeIfAbsent(nextUrl, Downstream::new);
+
+        ChunkDataClient client = downstream.getDataClient();
+        if (client != null) {
+            return client.putChainAsync(fileId, chunkNumber, data, rest)
+                    .exceptionallyCompose(error -> {
+                        logger.warning("Data plane error forwarding to " + nextUrl + ", falling back to RMI: "
+                                + error.getMessage());
+                        downstream.dropDataClient(client);
+                        return forwardRmi(downstream, fileId, chunkNumber, data, rest);
+                    });
+        }
+        return forwardRmi(downstream, fileId, chunkNumber, data, rest);
+    }
+
+    private CompletableFuture<boolean[]> forwardRmi(Downstream downstream, String fileId, int chunkNumber,
+            byte[] data, List<String> rest) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return downstream.getStub().storeFileChunkChain(fileId, chunkNumber, data, List.copyOf(rest));
+            } catch (Exception e) {
+                logger.severe("Error forwarding chunk " + chunkNumber + " of file " + fileId + " to "
+                        + downstream.url + ": " + e.getMessage());
+                downstream.invalidate();
+                // Ningún nodo de la cadena restante lo confirmó
+                return new boolean[rest.size() + 1];
+            }
+        }, rmiForwarders);
+    }
+
+    public void close() {
+        for (Downstream downstream : downstreams.values()) {
+            downstream.dropDataClient(null);
+        }
+        downstreams.clear();
+        rmiForwarders.shutdownNow();
+    }
+
+    // Stub y conexión de datos cacheados de un nodo siguiente
+    private static class Downstream {
+        final String url;
+        private volatile NodeInterface stub;
+        private ChunkDataClient dataClient;
+        private long dataRetryAtNanos = System.nanoTime();
+
+        Downstream(String url) {
+            this.url = url;
+        }
+
+        synchronized NodeInterface getStub() throws Exception {
+            if (stub == null) {
+                stub = (NodeInterface) Naming.lookup(url);
+                logger.info("Resolved downstream replica: " + url);
+            }
+            return stub;
+        }
+
+        synchronized void invalidate() {
+            stub = null;
+            dropDataClient(null);
+        }
+
+        // Conexión al plano de datos del nodo; null si no lo ofrece o falló hace poco
+        synchronized ChunkDataClient getDataClient() {
+            if (dataClient != null && dataClient.isOpen()) {
+                return dataClient;
+            }
+            if (System.nanoTime() - dataRetryAtNanos < 0) {
+                return null;
+            }
+            try {
+                int dataPort = getStub().getDataPort();
+                if (dataPort > 0) {
+                    dataClient = ChunkDataClient.connect(URI.create(url).getHost(), dataPort);
+                    return dataClient;
+                }
+            } catch (Exception e) {
+                logger.fine("Data plane unavailable for " + url + ": " + e.getMessage());
+                stub = null;
+            }
+            dataRetryAtNanos = System.nanoTime() + DATA_PLANE_RETRY_NANOS;
+            return null;
+        }
+
+        // Cierra la conexión de datos si sigue siendo la indicada (null la cierra siempre)
+        synchronized void dropDataClient(ChunkDataClient stale) {
+            if (dataClient != null && (stale == null || dataClient == stale)) {
+                dataClient.close();
+                dataClient = null;
+            }
+        }
+    }
+}
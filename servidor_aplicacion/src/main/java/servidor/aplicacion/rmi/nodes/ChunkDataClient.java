@@ -0,0 +1,266 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Cliente del plano de datos de un nodo de almacenamiento.
+ * - Una sola conexión TCP por nodo con peticiones encadenadas (pipelining):
+ *   varios hilos envían sin esperar y un hilo lector completa cada respuesta
+ *   según su requestId, ya que el nodo puede responder en otro orden
+ * - Cada petición expira a los DEFAULT_TIMEOUT_SECONDS sin afectar a las demás;
+ *   su respuesta tardía se descarta
+ * - Las cabeceras se escriben desde un buffer directo reutilizado
+ * - Ante cualquier error de E/S la conexión se cierra y fallan las peticiones
+ *   pendientes; quien la usa debe crear otra
+ * - Las peticiones que no llegaron a escribirse completas fallan con
+ *   RequestNotSentException: el nodo no pudo ejecutarlas y es seguro repetirlas
+ *   por otro camino. Cualquier otro error deja el resultado en el nodo en duda
+ */
+public class ChunkDataClient implements Closeable {
+    private static final Logger logger = Logger.getLogger(ChunkDataClient.class.getName());
+
+    public static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    // La petición no se escribió completa en la conexión, así que el nodo no la ejecutó
+    public static class RequestNotSentException extends IOException {
+        public RequestNotSentException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final String address;
+    private final SocketChannel channel;
+    private final ByteBuffer requestHeader;
+    private final Object sendLock;
+    private final ConcurrentHashMap<Long, PendingRequest> pending;
+    private final Thread reader;
+    private long nextRequestId;
+    private volatile boolean closed;
+
+    private ChunkDataClient(String host, int port, SocketChannel channel) {
+        this.address = host + ":" + port;
+        this.channel = channel;
+        this.requestHeader = ByteBuffer.allocateDirect(ChunkDataProtocol.REQUEST_HEADER_SIZE);
+        this.sendLock = new Object();
+        this.pending = new ConcurrentHashMap<>();
+        this.reader = new Thread(this::readLoop, "chunk-data-client-" + address);
+        this.reader.setDaemon(true);
+    }
+
+    public static ChunkDataClient connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        ChunkDataClient client = new ChunkDataClient(host, port, channel);
+        client.reader.start();
+        logger.info("Connected to chunk data server " + client.address);
+        return client;
+    }
+
+    public CompletableFuture<Boolean> putAsync(String fileId, int chunkNumber, byte[] data) {
+        return send(ChunkDataProtocol.OP_PUT, fileId, chunkNumber, ByteBuffer.wrap(data))
+                .thenApply(response -> response.status == ChunkDataProtocol.STATUS_OK);
+    }
+
+    // Datos del chunk, o null si el nodo no lo tiene
+    public CompletableFuture<byte[]> getAsync(String fileId, int chunkNumber) {
+        return send(ChunkDataProtocol.OP_GET, fileId, chunkNumber)
+                .thenApply(response -> response.status == ChunkDataProtocol.STATUS_OK ? response.data : null);
+    }
+
+    // Guardar en este nodo y en la cadena de réplicas siguientes; una confirmación por nodo, empezando por este
+    public CompletableFuture<boolean[]> putChainAsync(String fileId, int chunkNumber, byte[] data, List<String> chain) {
+        ByteBuffer chainPrefix;
+        try {
+            chainPrefix = ChunkDataProtocol.encodeChain(chain);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return send(ChunkDataProtocol.OP_PUT_CHAIN, fileId, chunkNumber, chainPrefix, ByteBuffer.wrap(data))
+                .thenApply(response -> {
+                    boolean[] acks = new boolean[chain.size() + 1];
+                    for (int i = 0; i < acks.length && i < response.data.length; i++) {
+                        acks[i] = response.data[i] != 0;
+                    }
+                    return acks;
+                });
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String fileId, int chunkNumber) {
+        return send(ChunkDataProtocol.OP_DELETE, fileId, chunkNumber)
+                .thenApply(response -> response.status == ChunkDataProtocol.STATUS_OK);
+    }
+
+    public boolean put(String fileId, int chunkNumber, byte[] data) throws IOException {
+        return await(putAsync(fileId, chunkNumber, data));
+    }
+
+    public byte[] get(String fileId, int chunkNumber) throws IOException {
+        return await(getAsync(fileId, chunkNumber));
+    }
+
+    public boolean delete(String fileId, int chunkNumber) throws IOException {
+        return await(deleteAsync(fileId, chunkNumber));
+    }
+
+    public boolean[] putChain(String fileId, int chunkNumber, byte[] data, List<String> chain) throws IOException {
+        return await(putChainAsync(fileId, chunkNumber, data, chain));
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        fail(new IOException("Data connection to " + address + " closed"));
+    }
+
+    private CompletableFuture<Response> send(byte op, String fileId, int chunkNumber, ByteBuffer... body) {
+        PendingRequest request = new PendingRequest();
+        byte[] key = fileId.getBytes(StandardCharsets.UTF_8);
+        int dataLength = 0;
+        for (ByteBuffer part : body) {
+            dataLength += part.remaining();
+        }
+        ByteBuffer[] frame = new ByteBuffer[body.length + 2];
+        frame[0] = requestHeader;
+        frame[1] = ByteBuffer.wrap(key);
+        System.arraycopy(body, 0, frame, 2, body.length);
+
+        synchronized (sendLock) {
+            if (closed) {
+                request.future.completeExceptionally(
+                        new RequestNotSentException("Data connection to " + address + " is closed", null));
+                return request.future;
+            }
+
+            request.id = ++nextRequestId;
+            // Registrar antes de escribir para que el lector siempre encuentre la petición
+            pending.put(request.id, request);
+            request.future.orTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .whenComplete((response, error) -> pending.remove(request.id, request));
+
+            requestHeader.clear();
+            requestHeader.put(op);
+            requestHeader.putLong(request.id);
+            requestHeader.putInt(chunkNumber);
+            requestHeader.putShort((short) key.length);
+            requestHeader.putInt(dataLength);
+            requestHeader.flip();
+
+            try {
+                ChunkDataProtocol.writeFully(channel, frame);
+            } catch (IOException e) {
+                // El nodo solo ejecuta tramas completas: esta petición no llegó a ejecutarse
+                pending.remove(request.id, request);
+                request.future.completeExceptionally(
+                        new RequestNotSentException("Could not send request to " + address, e));
+                fail(e);
+            }
+        }
+        return request.future;
+    }
+
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocateDirect(ChunkDataProtocol.RESPONSE_HEADER_SIZE);
+        try {
+            while (!closed) {
+                header.clear();
+                if (!ChunkDataProtocol.readFully(channel, header)) {
+                    throw new IOException("Data connection closed by " + address);
+                }
+                header.flip();
+                long requestId = header.getLong();
+                byte status = header.get();
+                int dataLength = header.getInt();
+                if (dataLength < 0 || dataLength > ChunkDataProtocol.MAX_DATA_LENGTH) {
+                    throw new IOException("Malformed response header from " + address);
+                }
+
+                byte[] data = new byte[dataLength];
+                ChunkDataProtocol.readFully(channel, ByteBuffer.wrap(data));
+
+                PendingRequest request = pending.remove(requestId);
+                if (request == null) {
+                    // La petición ya expiró
+                    logger.fine("Discarding late response " + requestId + " from " + address);
+                    continue;
+                }
+                request.future.complete(new Response(status, data));
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Cerrar la conexión y hacer fallar todas las peticiones pendientes
+    private void fail(IOException cause) {
+        if (!closed) {
+            closed = true;
+            logger.warning("Data connection to " + address + " failed: " + cause.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignorar: la conexión ya no se usa
+        }
+        for (PendingRequest request : pending.values()) {
+            if (pending.remove(request.id, request)) {
+                request.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            // La petición expira por sí sola (orTimeout en send)
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new IOException("Timed out waiting for " + address, cause);
+            }
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for " + address, e);
+        }
+    }
+
+    private static final class PendingRequest {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        long id;
+    }
+
+    private static final class Response {
+        final byte status;
+        final byte[] data;
+
+        Response(byte status, byte[] data) {
+            this.status = status;
+            this.data = data;
+        }
+    }
+}
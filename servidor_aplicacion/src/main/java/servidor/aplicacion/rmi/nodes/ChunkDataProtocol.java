@@ -0,0 +1,122 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Protocolo binario del plano de datos entre el servidor de aplicación y los nodos.
+ * - Petición: op(1) requestId(8) chunk(4) longClave(2) longDatos(4) clave datos
+ * - Respuesta: requestId(8) estado(1) longDatos(4) datos
+ * - PUT_CHAIN antepone a los datos la cadena de réplicas siguientes:
+ *   n(1) y n veces longUrl(2) url; la respuesta trae un byte de confirmación por réplica
+ * - El cliente puede enviar varias peticiones sin esperar respuesta (pipelining);
+ *   el nodo las atiende en paralelo y responde según terminan, así que las
+ *   respuestas se emparejan por requestId
+ * El control (estado, capacidad, listados) sigue yendo por RMI.
+ */
+final class ChunkDataProtocol {
+
+    static final byte OP_PUT = 1;
+    static final byte OP_GET = 2;
+    static final byte OP_DELETE = 3;
+    static final byte OP_PUT_CHAIN = 4;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_NOT_FOUND = 1;
+    static final byte STATUS_ERROR = 2;
+
+    static final int REQUEST_HEADER_SIZE = 19;
+    static final int RESPONSE_HEADER_SIZE = 13;
+
+    // Límites para rechazar cabeceras corruptas antes de reservar memoria
+    static final int MAX_KEY_LENGTH = 1024;
+    static final int MAX_DATA_LENGTH = 256 * 1024 * 1024;
+    static final int MAX_CHAIN_LENGTH = 16;
+
+    // Desplazamiento por defecto entre el puerto RMI del nodo y el de datos
+    static final int DEFAULT_PORT_OFFSET = 1000;
+
+    private ChunkDataProtocol() {
+    }
+
+    // Leer hasta llenar el buffer; false si el canal se cerró antes del primer byte
+    static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        boolean started = false;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                if (!started) {
+                    return false;
+                }
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+            started |= read > 0;
+        }
+        return true;
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // Cadena de réplicas siguientes tal como se antepone a los datos de un PUT_CHAIN
+    static ByteBuffer encodeChain(List<String> chain) throws IOException {
+        if (chain.size() > MAX_CHAIN_LENGTH) {
+            throw new IOException("Replication chain too long: " + chain.size());
+        }
+        List<byte[]> urls = new ArrayList<>(chain.size());
+        int size = 1;
+        for (String url : chain) {
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_KEY_LENGTH) {
+                throw new IOException("Replica URL too long: " + url);
+            }
+            urls.add(bytes);
+            size += 2 + bytes.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) urls.size());
+        for (byte[] url : urls) {
+            buffer.putShort((short) url.length);
+            buffer.put(url);
+        }
+        return buffer.flip();
+    }
+
+    // Leer la cadena de réplicas de un PUT_CHAIN; deja en chain las URLs y devuelve los bytes consumidos
+    static int readChain(ReadableByteChannel channel, List<String> chain) throws IOException {
+        ByteBuffer count = ByteBuffer.allocate(1);
+        readFully(channel, count);
+        int size = count.get(0) & 0xFF;
+        if (size > MAX_CHAIN_LENGTH) {
+            throw new IOException("Replication chain too long: " + size);
+        }
+
+        int consumed = 1;
+        ByteBuffer length = ByteBuffer.allocate(2);
+        for (int i = 0; i < size; i++) {
+            length.clear();
+            readFully(channel, length);
+            int urlLength = length.getShort(0) & 0xFFFF;
+            if (urlLength > MAX_KEY_LENGTH) {
+                throw new IOException("Malformed replication chain");
+            }
+            ByteBuffer url = ByteBuffer.allocate(urlLength);
+            readFully(channel, url);
+            chain.add(new String(url.array(), StandardCharsets.UTF_8));
+            consumed += 2 + urlLength;
+        }
+        return consumed;
+    }
+}
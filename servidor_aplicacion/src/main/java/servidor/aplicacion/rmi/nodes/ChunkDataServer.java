@@ -0,0 +1,278 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Servidor del plano de datos de un nodo de almacenamiento.
+ * - Atiende PUT/GET/DELETE de chunks con el protocolo de ChunkDataProtocol
+ * - En PUT_CHAIN el nodo guarda el chunk y lo reenvía a la siguiente réplica;
+ *   responde con las confirmaciones de toda la cadena
+ * - Un hilo por conexión lee las peticiones y las reparte a un pool de trabajo:
+ *   un GET no espera detrás de un PUT_CHAIN y las escrituras concurrentes de una
+ *   misma conexión pueden compartir el force() del GroupCommitter. Las respuestas
+ *   salen según terminan y el cliente las empareja por requestId
+ * - Cada conexión admite MAX_REQUESTS_PER_CONNECTION peticiones en curso; con
+ *   el tope alcanzado deja de leer y el cliente nota la contención en TCP
+ * - Los GET se envían desde la vista mapeada del segmento sin copiarlos al heap
+ */
+public class ChunkDataServer {
+    private static final Logger logger = Logger.getLogger(ChunkDataServer.class.getName());
+
+    static final int MAX_REQUESTS_PER_CONNECTION = 32;
+
+    private final StorageNode storageNode;
+    private final int port;
+    private final ExecutorService connections;
+    // Sin tope de hilos: un PUT_CHAIN espera a la réplica siguiente y dos cadenas
+    // cruzadas entre nodos no deben bloquearse por falta de trabajadores
+    private final ExecutorService workers;
+    private final Set<SocketChannel> openChannels;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+
+    public ChunkDataServer(StorageNode storageNode, int port) {
+        this.storageNode = storageNode;
+        this.port = port;
+        this.openChannels = ConcurrentHashMap.newKeySet();
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-data-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "chunk-data-worker-" + port);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+
+        acceptor = new Thread(this::acceptLoop, "chunk-data-acceptor-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Chunk data server listening on port " + port);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void stop() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            logger.warning("Error closing chunk data server: " + e.getMessage());
+        }
+        for (SocketChannel channel : openChannels) {
+            closeQuietly(channel);
+        }
+        connections.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                openChannels.add(channel);
+                connections.execute(() -> serve(channel));
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                logger.warning("Error accepting data connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // Leer las peticiones de una conexión hasta que el cliente la cierre y repartirlas a los trabajadores
+    private void serve(SocketChannel channel) {
+        ByteBuffer header = ByteBuffer.allocateDirect(ChunkDataProtocol.REQUEST_HEADER_SIZE);
+        Connection connection = new Connection(channel);
+
+        try {
+            while (true) {
+                connection.inFlight.acquire();
+                header.clear();
+                if (!ChunkDataProtocol.readFully(channel, header)) {
+                    return;
+                }
+                header.flip();
+
+                byte op = header.get();
+                long requestId = header.getLong();
+                int chunkNumber = header.getInt();
+                int keyLength = header.getShort() & 0xFFFF;
+                int dataLength = header.getInt();
+                if (keyLength > ChunkDataProtocol.MAX_KEY_LENGTH || dataLength < 0
+                        || dataLength > ChunkDataProtocol.MAX_DATA_LENGTH) {
+                    throw new IOException("Malformed request header");
+                }
+
+                ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+                ChunkDataProtocol.readFully(channel, keyBuffer);
+                String fileId = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+
+                Runnable request;
+                switch (op) {
+                    case ChunkDataProtocol.OP_PUT: {
+                        byte[] data = new byte[dataLength];
+                        ChunkDataProtocol.readFully(channel, ByteBuffer.wrap(data));
+                        request = () -> {
+                            boolean stored = storeChunk(fileId, chunkNumber, data);
+                            connection.respond(requestId,
+                                    stored ? ChunkDataProtocol.STATUS_OK : ChunkDataProtocol.STATUS_ERROR, null);
+                        };
+                        break;
+                    }
+                    case ChunkDataProtocol.OP_PUT_CHAIN: {
+                        List<String> chain = new ArrayList<>();
+                        int consumed = ChunkDataProtocol.readChain(channel, chain);
+                        if (consumed > dataLength) {
+                            throw new IOException("Malformed replication chain");
+                        }
+                        byte[] data = new byte[dataLength - consumed];
+                        ChunkDataProtocol.readFully(channel, ByteBuffer.wrap(data));
+                        request = () -> {
+                            // Guardar localmente mientras se reenvía al resto de la cadena
+                            boolean[] acks = storeChunkChain(fileId, chunkNumber, data, chain);
+                            ByteBuffer ackBuffer = ByteBuffer.allocate(acks.length);
+                            for (boolean ack : acks) {
+                                ackBuffer.put(ack ? (byte) 1 : (byte) 0);
+                            }
+                            connection.respond(requestId, ChunkDataProtocol.STATUS_OK, ackBuffer.flip());
+                        };
+                        break;
+                    }
+                    case ChunkDataProtocol.OP_GET: {
+                        request = () -> {
+                            ByteBuffer data = readChunk(fileId, chunkNumber);
+                            connection.respond(requestId,
+                                    data != null ? ChunkDataProtocol.STATUS_OK : ChunkDataProtocol.STATUS_NOT_FOUND,
+                                    data);
+                        };
+                        break;
+                    }
+                    case ChunkDataProtocol.OP_DELETE: {
+                        request = () -> {
+                            boolean deleted = deleteChunk(fileId, chunkNumber);
+                            connection.respond(requestId,
+                                    deleted ? ChunkDataProtocol.STATUS_OK : ChunkDataProtocol.STATUS_NOT_FOUND, null);
+                        };
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown operation " + op);
+                }
+                workers.execute(() -> {
+                    try {
+                        request.run();
+                    } finally {
+                        connection.inFlight.release();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            logger.fine("Data connection closed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openChannels.remove(channel);
+            closeQuietly(channel);
+        }
+    }
+
+    private boolean storeChunk(String fileId, int chunkNumber, byte[] data) {
+        try {
+            return storageNode.storeFileChunk(fileId, chunkNumber, data);
+        } catch (IOException e) {
+            logger.severe("Error storing file chunk: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean[] storeChunkChain(String fileId, int chunkNumber, byte[] data, List<String> chain) {
+        try {
+            return storageNode.storeFileChunkChain(fileId, chunkNumber, data, chain);
+        } catch (IOException e) {
+            logger.severe("Error storing file chunk chain: " + e.getMessage());
+            return new boolean[chain.size() + 1];
+        }
+    }
+
+    private boolean deleteChunk(String fileId, int chunkNumber) {
+        try {
+            return storageNode.deleteFileChunk(fileId, chunkNumber);
+        } catch (IOException e) {
+            logger.severe("Error deleting file chunk: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private ByteBuffer readChunk(String fileId, int chunkNumber) {
+        try {
+            return storageNode.readChunk(fileId, chunkNumber);
+        } catch (IOException e) {
+            logger.severe("Error retrieving file chunk: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Conexión aceptada: los trabajadores escriben sus respuestas de una en una
+    private final class Connection {
+        final SocketChannel channel;
+        final Semaphore inFlight = new Semaphore(MAX_REQUESTS_PER_CONNECTION);
+        private final ByteBuffer response = ByteBuffer.allocateDirect(ChunkDataProtocol.RESPONSE_HEADER_SIZE);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Un error al responder cierra la conexión; el hilo lector termina al fallar su lectura
+        synchronized void respond(long requestId, byte status, ByteBuffer data) {
+            response.clear();
+            response.putLong(requestId);
+            response.put(status);
+            response.putInt(data != null ? data.remaining() : 0);
+            response.flip();
+            try {
+                if (data != null) {
+                    ChunkDataProtocol.writeFully(channel, response, data);
+                } else {
+                    ChunkDataProtocol.writeFully(channel, response);
+                }
+            } catch (IOException e) {
+                logger.fine("Could not send response " + requestId + ": " + e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignorar: la conexión ya no se usa
+        }
+    }
+}
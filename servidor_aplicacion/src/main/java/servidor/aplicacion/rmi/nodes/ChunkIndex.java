@@ -0,0 +1,888 @@
+package servidor.aplicacion.rmi.nodes;
+
+import servidor.aplicacion.util.ChunkCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Índice compacto de los chunks de un SegmentStore.
+ * - Las claves "<fileId>_<chunk>" y "<fileId>_<chunk>_<chunk>" se guardan como
+ *   (long fileId, int chunk) en una tabla de direccionamiento abierto sobre
+ *   arreglos primitivos, sin objetos por entrada
+ * - La ubicación se guarda como segmento y offset empaquetados en un long más
+ *   la longitud en un int (~32 bytes por chunk con el factor de carga)
+ * - Cada archivo lleva el conjunto de sus índices de chunk (también de
+ *   direccionamiento abierto, ~11 bytes por chunk), para listar los archivos y
+ *   enumerar los chunks de uno sin recorrer la tabla ni sondear índices vacíos
+ * - Las claves de contenidos deduplicados, "c<sha256>[-<códec>]_<n>", van a una
+ *   segunda tabla: el hash se guarda como cuatro long y la posición se elige
+ *   por sus primeros 64 bits y el número de fragmento (~65 bytes por chunk)
+ * - Las claves con otro formato se guardan en un mapa aparte
+ * Las lecturas son optimistas (StampedLock); las escrituras toman el lock exclusivo.
+ */
+final class ChunkIndex {
+
+    private static final long EMPTY = -1L;
+    // Marca en el índice de chunk para las claves con el índice repetido ("<fileId>_<n>_<n>")
+    private static final int REPEATED_FLAG = 0x80000000;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double LOAD_FACTOR = 0.75;
+
+    // Entrada recorrida por forEach: clave empaquetada (otherKey null) o clave de otro formato
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(long fileId, int chunkKey, String otherKey, long position, int length) throws IOException;
+    }
+
+    private final StampedLock lock;
+    private Table table;
+    private ContentTable contents;
+    private final Map<String, SegmentStore.ChunkLocation> otherKeys;
+    private final Map<Long, FileChunks> files;
+    private long liveDataBytes;
+
+    ChunkIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private ChunkIndex(int capacity) {
+        this.lock = new StampedLock();
+        this.table = new Table(capacity);
+        this.contents = new ContentTable(INITIAL_CAPACITY);
+        this.otherKeys = new HashMap<>();
+        this.files = new HashMap<>();
+    }
+
+    SegmentStore.ChunkLocation get(String key) {
+        long fileId = fileIdOf(key);
+        if (fileId == EMPTY) {
+            ContentKey content = ContentKey.parse(key);
+            if (content != null) {
+                return getContent(content);
+            }
+            long stamp = lock.readLock();
+            try {
+                return otherKeys.get(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int chunkKey = chunkKeyOf(key);
+        long stamp = lock.tryOptimisticRead();
+        SegmentStore.ChunkLocation location = lookup(table, fileId, chunkKey);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                location = lookup(table, fileId, chunkKey);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return location;
+    }
+
+    private SegmentStore.ChunkLocation getContent(ContentKey content) {
+        long stamp = lock.tryOptimisticRead();
+        SegmentStore.ChunkLocation location = lookupContent(contents, content);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                location = lookupContent(contents, content);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return location;
+    }
+
+    boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    // Insertar o reemplazar; devuelve la ubicación anterior
+    SegmentStore.ChunkLocation put(String key, SegmentStore.ChunkLocation location) {
+        long fileId = fileIdOf(key);
+        ContentKey content = fileId == EMPTY ? ContentKey.parse(key) : null;
+        long position = pack(location.segmentId, location.offset);
+        long stamp = lock.writeLock();
+        try {
+            SegmentStore.ChunkLocation previous;
+            if (fileId != EMPTY) {
+                previous = insert(fileId, chunkKeyOf(key), position, location.length);
+            } else if (content != null) {
+                previous = insertContent(content, position, location.length);
+            } else {
+                previous = otherKeys.put(key, location);
+            }
+            liveDataBytes += location.length - (previous != null ? previous.length : 0);
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Insertar una entrada ya empaquetada (carga de la instantánea)
+    void putPacked(long fileId, int chunkKey, long position, int length) {
+        long stamp = lock.writeLock();
+        try {
+            SegmentStore.ChunkLocation previous = insert(fileId, chunkKey, position, length);
+            liveDataBytes += length - (previous != null ? previous.length : 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Eliminar; devuelve la ubicación anterior o null
+    SegmentStore.ChunkLocation remove(String key) {
+        long fileId = fileIdOf(key);
+        ContentKey content = fileId == EMPTY ? ContentKey.parse(key) : null;
+        long stamp = lock.writeLock();
+        try {
+            SegmentStore.ChunkLocation previous;
+            if (fileId != EMPTY) {
+                previous = delete(fileId, chunkKeyOf(key));
+            } else if (content != null) {
+                previous = deleteContent(content);
+            } else {
+                previous = otherKeys.remove(key);
+            }
+            if (previous != null) {
+                liveDataBytes -= previous.length;
+            }
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.size + contents.size + otherKeys.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long liveDataBytes() {
+        long stamp = lock.readLock();
+        try {
+            return liveDataBytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(INITIAL_CAPACITY);
+            contents = new ContentTable(INITIAL_CAPACITY);
+            otherKeys.clear();
+            files.clear();
+            liveDataBytes = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Todas las claves, reconstruidas en su formato original
+    List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            for (int i = 0; i < current.fileIds.length; i++) {
+                if (current.fileIds[i] != EMPTY) {
+                    keys.add(keyOf(current.fileIds[i], current.chunks[i]));
+                }
+            }
+            ContentTable currentContents = contents;
+            for (int i = 0; i < currentContents.tags.length; i++) {
+                if (currentContents.tags[i] != 0) {
+                    keys.add(currentContents.keyAt(i).toString());
+                }
+            }
+            keys.addAll(otherKeys.keySet());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return keys;
+    }
+
+    // IDs de archivo distintos (prefijo de la clave hasta el primer '_')
+    List<String> fileIds() {
+        Set<String> fileIds = new LinkedHashSet<>();
+        long stamp = lock.readLock();
+        try {
+            for (Long fileId : files.keySet()) {
+                fileIds.add(Long.toString(fileId));
+            }
+            ContentTable currentContents = contents;
+            for (int i = 0; i < currentContents.tags.length; i++) {
+                if (currentContents.tags[i] != 0) {
+                    fileIds.add(currentContents.keyAt(i).storageId());
+                }
+            }
+            for (String key : otherKeys.keySet()) {
+                int separator = key.indexOf('_');
+                fileIds.add(separator < 0 ? key : key.substring(0, separator));
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return new ArrayList<>(fileIds);
+    }
+
+    // Claves de los chunks de un archivo, sin recorrer la tabla completa
+    List<String> keysOfFile(long fileId) {
+        List<String> keys = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            FileChunks chunks = files.get(fileId);
+            if (chunks != null) {
+                for (long chunkKey : chunks.keys) {
+                    if (chunkKey != EMPTY) {
+                        keys.add(keyOf(fileId, (int) chunkKey));
+                    }
+                }
+            }
+            String prefix = fileId + "_";
+            for (String key : otherKeys.keySet()) {
+                if (key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return keys;
+    }
+
+    // Copia independiente para recorrerla sin bloquear a los escritores
+    ChunkIndex copy() {
+        long stamp = lock.readLock();
+        try {
+            ChunkIndex copy = new ChunkIndex(table.fileIds.length);
+            copy.table = table.copy();
+            copy.contents = contents.copy();
+            copy.otherKeys.putAll(otherKeys);
+            for (Map.Entry<Long, FileChunks> entry : files.entrySet()) {
+                copy.files.put(entry.getKey(), entry.getValue().copy());
+            }
+            copy.liveDataBytes = liveDataBytes;
+            return copy;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Recorrer las entradas; pensado para copias que nadie modifica
+    void forEach(EntryVisitor visitor) throws IOException {
+        Table current = table;
+        for (int i = 0; i < current.fileIds.length; i++) {
+            if (current.fileIds[i] != EMPTY) {
+                visitor.visit(current.fileIds[i], current.chunks[i], null, current.positions[i], current.lengths[i]);
+            }
+        }
+        // Las claves de contenido se recorren en texto: la instantánea las guarda así
+        ContentTable currentContents = contents;
+        for (int i = 0; i < currentContents.tags.length; i++) {
+            if (currentContents.tags[i] != 0) {
+                visitor.visit(EMPTY, 0, currentContents.keyAt(i).toString(), currentContents.positions[i],
+                        currentContents.lengths[i]);
+            }
+        }
+        for (Map.Entry<String, SegmentStore.ChunkLocation> entry : otherKeys.entrySet()) {
+            SegmentStore.ChunkLocation location = entry.getValue();
+            visitor.visit(EMPTY, 0, entry.getKey(), pack(location.segmentId, location.offset), location.length);
+        }
+    }
+
+    static long pack(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static long offsetOf(long position) {
+        return position & 0xFFFFFFFFL;
+    }
+
+    // Debe llamarse con el lock exclusivo
+    private SegmentStore.ChunkLocation insert(long fileId, int chunkKey, long position, int length) {
+        int slot = find(table, fileId, chunkKey);
+        if (slot >= 0) {
+            SegmentStore.ChunkLocation previous = locationAt(table, slot);
+            table.positions[slot] = position;
+            table.lengths[slot] = length;
+            return previous;
+        }
+
+        if (table.size + 1 > table.threshold) {
+            table = table.resized();
+        }
+        table.insertNew(fileId, chunkKey, position, length);
+
+        files.computeIfAbsent(fileId, id -> new FileChunks()).add(chunkKey);
+        return null;
+    }
+
+    // Debe llamarse con el lock exclusivo
+    private SegmentStore.ChunkLocation delete(long fileId, int chunkKey) {
+        int slot = find(table, fileId, chunkKey);
+        if (slot < 0) {
+            return null;
+        }
+        SegmentStore.ChunkLocation previous = locationAt(table, slot);
+        table.removeAt(slot);
+
+        FileChunks chunks = files.get(fileId);
+        if (chunks != null && chunks.remove(chunkKey) && chunks.size == 0) {
+            files.remove(fileId);
+        }
+        return previous;
+    }
+
+    // Debe llamarse con el lock exclusivo
+    private SegmentStore.ChunkLocation insertContent(ContentKey key, long position, int length) {
+        int slot = findContent(contents, key);
+        if (slot >= 0) {
+            SegmentStore.ChunkLocation previous = contentLocationAt(contents, slot);
+            contents.positions[slot] = position;
+            contents.lengths[slot] = length;
+            return previous;
+        }
+
+        if (contents.size + 1 > contents.threshold) {
+            contents = contents.resized();
+        }
+        contents.insertNew(key, position, length);
+        return null;
+    }
+
+    // Debe llamarse con el lock exclusivo
+    private SegmentStore.ChunkLocation deleteContent(ContentKey key) {
+        int slot = findContent(contents, key);
+        if (slot < 0) {
+            return null;
+        }
+        SegmentStore.ChunkLocation previous = contentLocationAt(contents, slot);
+        contents.removeAt(slot);
+        return previous;
+    }
+
+    private static SegmentStore.ChunkLocation lookupContent(ContentTable current, ContentKey key) {
+        int slot = findContent(current, key);
+        return slot >= 0 ? contentLocationAt(current, slot) : null;
+    }
+
+    private static SegmentStore.ChunkLocation contentLocationAt(ContentTable current, int slot) {
+        long position = current.positions[slot];
+        int length = current.lengths[slot];
+        int keyLength = ContentKey.keyLength(current.tags[slot], current.contentIds[slot], current.chunks[slot]);
+        return new SegmentStore.ChunkLocation(segmentOf(position), offsetOf(position), length,
+                SegmentStore.HEADER_SIZE + keyLength + length);
+    }
+
+    private static int findContent(ContentTable current, ContentKey key) {
+        int mask = current.tags.length - 1;
+        int slot = slotOf(key.hash0, key.chunk, mask);
+        // Acotado por la capacidad, como find
+        for (int probes = 0; probes <= mask; probes++) {
+            byte tag = current.tags[slot];
+            if (tag == 0) {
+                return -1;
+            }
+            if (tag == key.tag && current.chunks[slot] == key.chunk && current.matches(slot, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static SegmentStore.ChunkLocation lookup(Table current, long fileId, int chunkKey) {
+        int slot = find(current, fileId, chunkKey);
+        return slot >= 0 ? locationAt(current, slot) : null;
+    }
+
+    private static SegmentStore.ChunkLocation locationAt(Table current, int slot) {
+        long position = current.positions[slot];
+        int length = current.lengths[slot];
+        int recordLength = SegmentStore.HEADER_SIZE + keyLength(current.fileIds[slot], current.chunks[slot]) + length;
+        return new SegmentStore.ChunkLocation(segmentOf(position), offsetOf(position), length, recordLength);
+    }
+
+    private static int find(Table current, long fileId, int chunkKey) {
+        int mask = current.fileIds.length - 1;
+        int slot = slotOf(fileId, chunkKey, mask);
+        // Acotado por la capacidad: una lectura optimista puede ver la tabla a medio modificar
+        for (int probes = 0; probes <= mask; probes++) {
+            long candidate = current.fileIds[slot];
+            if (candidate == EMPTY) {
+                return -1;
+            }
+            if (candidate == fileId && current.chunks[slot] == chunkKey) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int slotOf(long fileId, int chunkKey, int mask) {
+        long h = fileId * 0x9E3779B97F4A7C15L + chunkKey;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    // fileId de una clave "<fileId>_<n>" o "<fileId>_<n>_<n>"; EMPTY si tiene otro formato
+    static long fileIdOf(String key) {
+        int first = key.indexOf('_');
+        if (!isNumber(key, 0, first, 18)) {
+            return EMPTY;
+        }
+        int second = key.indexOf('_', first + 1);
+        if (second < 0) {
+            if (!isChunkNumber(key, first + 1, key.length())) {
+                return EMPTY;
+            }
+        } else {
+            // Formato repetido: las dos partes deben ser idénticas
+            int chunkLength = second - first - 1;
+            if (!isChunkNumber(key, first + 1, second) || key.length() - second - 1 != chunkLength
+                    || !key.regionMatches(first + 1, key, second + 1, chunkLength)) {
+                return EMPTY;
+            }
+        }
+        return Long.parseLong(key, 0, first, 10);
+    }
+
+    // Índice de chunk (con la marca de repetición) de una clave válida según fileIdOf
+    static int chunkKeyOf(String key) {
+        int first = key.indexOf('_');
+        int second = key.indexOf('_', first + 1);
+        int end = second < 0 ? key.length() : second;
+        int chunk = Integer.parseInt(key, first + 1, end, 10);
+        return second < 0 ? chunk : chunk | REPEATED_FLAG;
+    }
+
+    static String keyOf(long fileId, int chunkKey) {
+        int chunk = chunkKey & ~REPEATED_FLAG;
+        return (chunkKey & REPEATED_FLAG) != 0 ? fileId + "_" + chunk + "_" + chunk : fileId + "_" + chunk;
+    }
+
+    // Longitud en bytes de la clave reconstruida (solo dígitos ASCII y '_')
+    private static int keyLength(long fileId, int chunkKey) {
+        int chunkDigits = digits(chunkKey & ~REPEATED_FLAG);
+        int length = digits(fileId) + 1 + chunkDigits;
+        return (chunkKey & REPEATED_FLAG) != 0 ? length + 1 + chunkDigits : length;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static boolean isChunkNumber(String key, int from, int to) {
+        return isNumber(key, from, to, 10) && Long.parseLong(key, from, to, 10) <= Integer.MAX_VALUE;
+    }
+
+    // Dígitos decimales sin ceros a la izquierda, para que la clave se pueda reconstruir igual
+    private static boolean isNumber(String key, int from, int to, int maxDigits) {
+        int length = to - from;
+        if (from < 0 || length <= 0 || length > maxDigits || (length > 1 && key.charAt(from) == '0')) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clave de un contenido deduplicado: "c" + SHA-256 en hexadecimal (en
+     * minúsculas, como ChunkDigest.sha256Hex), "-" + ID del contenido en la BD,
+     * el sufijo del códec si el chunk está comprimido y el número de fragmento.
+     */
+    private static final class ContentKey {
+        private static final int HEX_LENGTH = 64;
+        private static final HexFormat HEX = HexFormat.of();
+        // Sufijo de cada códec en las claves (ChunkCodec en minúsculas); el índice más uno es la etiqueta
+        private static final String[] CODEC_SUFFIXES = codecSuffixes();
+
+        final long hash0;
+        final long hash1;
+        final long hash2;
+        final long hash3;
+        final long contentId;
+        final int chunk;
+        final byte tag;
+
+        ContentKey(long hash0, long hash1, long hash2, long hash3, long contentId, int chunk, byte tag) {
+            this.hash0 = hash0;
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.hash3 = hash3;
+            this.contentId = contentId;
+            this.chunk = chunk;
+            this.tag = tag;
+        }
+
+        // Clave de contenido o null si la clave tiene otro formato
+        static ContentKey parse(String key) {
+            int separator = key.lastIndexOf('_');
+            if (separator < HEX_LENGTH + 1 || key.charAt(0) != 'c' || !isChunkNumber(key, separator + 1, key.length())) {
+                return null;
+            }
+            for (int i = 1; i <= HEX_LENGTH; i++) {
+                char c = key.charAt(i);
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return null;
+                }
+            }
+            if (key.length() <= HEX_LENGTH + 1 || key.charAt(HEX_LENGTH + 1) != '-') {
+                return null;
+            }
+            int idStart = HEX_LENGTH + 2;
+            int idEnd = idStart;
+            while (idEnd < separator && key.charAt(idEnd) >= '0' && key.charAt(idEnd) <= '9') {
+                idEnd++;
+            }
+            if (!isNumber(key, idStart, idEnd, 18)) {
+                return null;
+            }
+            int suffixLength = separator - idEnd;
+            for (int i = 0; i < CODEC_SUFFIXES.length; i++) {
+                String suffix = CODEC_SUFFIXES[i];
+                if (suffix.length() == suffixLength && key.regionMatches(idEnd, suffix, 0, suffixLength)) {
+                    return new ContentKey(Long.parseUnsignedLong(key, 1, 17, 16), Long.parseUnsignedLong(key, 17, 33, 16),
+                            Long.parseUnsignedLong(key, 33, 49, 16), Long.parseUnsignedLong(key, 49, 65, 16),
+                            Long.parseLong(key, idStart, idEnd, 10), Integer.parseInt(key, separator + 1, key.length(), 10),
+                            (byte) (i + 1));
+                }
+            }
+            return null;
+        }
+
+        // Prefijo de la clave antes del número de fragmento
+        String storageId() {
+            return "c" + HEX.toHexDigits(hash0) + HEX.toHexDigits(hash1) + HEX.toHexDigits(hash2)
+                    + HEX.toHexDigits(hash3) + "-" + contentId + CODEC_SUFFIXES[tag - 1];
+        }
+
+        @Override
+        public String toString() {
+            return storageId() + "_" + chunk;
+        }
+
+        // Longitud en bytes de la clave (solo caracteres ASCII)
+        static int keyLength(byte tag, long contentId, int chunk) {
+            return 1 + HEX_LENGTH + 1 + digits(contentId) + CODEC_SUFFIXES[tag - 1].length() + 1 + digits(chunk);
+        }
+
+        private static String[] codecSuffixes() {
+            ChunkCodec[] codecs = ChunkCodec.values();
+            String[] suffixes = new String[codecs.length];
+            for (int i = 0; i < codecs.length; i++) {
+                suffixes[i] = codecs[i] == ChunkCodec.NONE ? "" : "-" + codecs[i].name().toLowerCase();
+            }
+            return suffixes;
+        }
+    }
+
+    // Arreglos de la tabla de contenidos; se reemplazan completos al crecer
+    private static final class ContentTable {
+        // 0 si la posición está libre; si no, la etiqueta del códec de la clave
+        final byte[] tags;
+        // Los cuatro long del hash de cada entrada, seguidos
+        final long[] hashes;
+        final long[] contentIds;
+        final int[] chunks;
+        final long[] positions;
+        final int[] lengths;
+        final int threshold;
+        int size;
+
+        ContentTable(int capacity) {
+            this.tags = new byte[capacity];
+            this.hashes = new long[capacity * 4];
+            this.contentIds = new long[capacity];
+            this.chunks = new int[capacity];
+            this.positions = new long[capacity];
+            this.lengths = new int[capacity];
+            this.threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        private ContentTable(ContentTable other) {
+            this.tags = other.tags.clone();
+            this.hashes = other.hashes.clone();
+            this.contentIds = other.contentIds.clone();
+            this.chunks = other.chunks.clone();
+            this.positions = other.positions.clone();
+            this.lengths = other.lengths.clone();
+            this.threshold = other.threshold;
+            this.size = other.size;
+        }
+
+        ContentTable copy() {
+            return new ContentTable(this);
+        }
+
+        ContentTable resized() {
+            ContentTable bigger = new ContentTable(tags.length * 2);
+            for (int i = 0; i < tags.length; i++) {
+                if (tags[i] != 0) {
+                    bigger.insertNew(keyAt(i), positions[i], lengths[i]);
+                }
+            }
+            return bigger;
+        }
+
+        boolean matches(int slot, ContentKey key) {
+            int base = slot * 4;
+            return hashes[base] == key.hash0 && hashes[base + 1] == key.hash1
+                    && hashes[base + 2] == key.hash2 && hashes[base + 3] == key.hash3
+                    && contentIds[slot] == key.contentId;
+        }
+
+        ContentKey keyAt(int slot) {
+            int base = slot * 4;
+            return new ContentKey(hashes[base], hashes[base + 1], hashes[base + 2], hashes[base + 3], contentIds[slot],
+                    chunks[slot], tags[slot]);
+        }
+
+        void insertNew(ContentKey key, long position, int length) {
+            int mask = tags.length - 1;
+            int slot = slotOf(key.hash0, key.chunk, mask);
+            while (tags[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            // La etiqueta se escribe al final para que un lector no vea una entrada a medias
+            int base = slot * 4;
+            hashes[base] = key.hash0;
+            hashes[base + 1] = key.hash1;
+            hashes[base + 2] = key.hash2;
+            hashes[base + 3] = key.hash3;
+            contentIds[slot] = key.contentId;
+            chunks[slot] = key.chunk;
+            positions[slot] = position;
+            lengths[slot] = length;
+            tags[slot] = key.tag;
+            size++;
+        }
+
+        // Borrado con desplazamiento hacia atrás, como en Table
+        void removeAt(int slot) {
+            int mask = tags.length - 1;
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (tags[next] == 0) {
+                    break;
+                }
+                int home = slotOf(hashes[next * 4], chunks[next], mask);
+                boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (movable) {
+                    System.arraycopy(hashes, next * 4, hashes, hole * 4, 4);
+                    contentIds[hole] = contentIds[next];
+                    chunks[hole] = chunks[next];
+                    positions[hole] = positions[next];
+                    lengths[hole] = lengths[next];
+                    tags[hole] = tags[next];
+                    hole = next;
+                }
+            }
+            tags[hole] = 0;
+            size--;
+        }
+    }
+
+    // Arreglos de la tabla; se reemplazan completos al crecer
+    private static final class Table {
+        final long[] fileIds;
+        final int[] chunks;
+        final long[] positions;
+        final int[] lengths;
+        final int threshold;
+        int size;
+
+        Table(int capacity) {
+            this.fileIds = new long[capacity];
+            this.chunks = new int[capacity];
+            this.positions = new long[capacity];
+            this.lengths = new int[capacity];
+            this.threshold = (int) (capacity * LOAD_FACTOR);
+            Arrays.fill(fileIds, EMPTY);
+        }
+
+        private Table(Table other) {
+            this.fileIds = other.fileIds.clone();
+            this.chunks = other.chunks.clone();
+            this.positions = other.positions.clone();
+            this.lengths = other.lengths.clone();
+            this.threshold = other.threshold;
+            this.size = other.size;
+        }
+
+        Table copy() {
+            return new Table(this);
+        }
+
+        Table resized() {
+            Table bigger = new Table(fileIds.length * 2);
+            for (int i = 0; i < fileIds.length; i++) {
+                if (fileIds[i] != EMPTY) {
+                    bigger.insertNew(fileIds[i], chunks[i], positions[i], lengths[i]);
+                }
+            }
+            return bigger;
+        }
+
+        void insertNew(long fileId, int chunkKey, long position, int length) {
+            int mask = fileIds.length - 1;
+            int slot = slotOf(fileId, chunkKey, mask);
+            while (fileIds[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            // El fileId se escribe al final para que un lector no vea una entrada a medias
+            chunks[slot] = chunkKey;
+            positions[slot] = position;
+            lengths[slot] = length;
+            fileIds[slot] = fileId;
+            size++;
+        }
+
+        // Borrado con desplazamiento hacia atrás: la tabla queda sin marcas de borrado
+        void removeAt(int slot) {
+            int mask = fileIds.length - 1;
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (fileIds[next] == EMPTY) {
+                    break;
+                }
+                int home = slotOf(fileIds[next], chunks[next], mask);
+                boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (movable) {
+                    chunks[hole] = chunks[next];
+                    positions[hole] = positions[next];
+                    lengths[hole] = lengths[next];
+                    fileIds[hole] = fileIds[next];
+                    hole = next;
+                }
+            }
+            fileIds[hole] = EMPTY;
+            size--;
+        }
+    }
+
+    /**
+     * Índices de chunk de un archivo en un conjunto de direccionamiento
+     * abierto. Cada índice se guarda sin signo en un long para que EMPTY no
+     * coincida con ningún índice (con la marca de repetición se usan los 32 bits).
+     */
+    private static final class FileChunks {
+        private static final int INITIAL_CAPACITY = 8;
+
+        long[] keys;
+        int size;
+
+        FileChunks() {
+            this.keys = new long[INITIAL_CAPACITY];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private FileChunks(FileChunks other) {
+            this.keys = other.keys.clone();
+            this.size = other.size;
+        }
+
+        FileChunks copy() {
+            return new FileChunks(this);
+        }
+
+        void add(int chunkKey) {
+            if (size + 1 > keys.length * LOAD_FACTOR) {
+                long[] old = keys;
+                keys = new long[old.length * 2];
+                Arrays.fill(keys, EMPTY);
+                for (long key : old) {
+                    if (key != EMPTY) {
+                        keys[slotFor(key)] = key;
+                    }
+                }
+            }
+            long key = chunkKey & 0xFFFFFFFFL;
+            int slot = slotFor(key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+        }
+
+        // Borrado con desplazamiento hacia atrás, como en Table
+        boolean remove(int chunkKey) {
+            long key = chunkKey & 0xFFFFFFFFL;
+            int mask = keys.length - 1;
+            int hole = slotFor(key);
+            if (keys[hole] == EMPTY) {
+                return false;
+            }
+            int next = hole;
+            while (true) {
+                next = (next + 1) & mask;
+                if (keys[next] == EMPTY) {
+                    break;
+                }
+                int home = home(keys[next], mask);
+                boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (movable) {
+                    keys[hole] = keys[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+            size--;
+            return true;
+        }
+
+        // Posición de la clave o el primer hueco libre de su secuencia de sondeo
+        private int slotFor(long key) {
+            int mask = keys.length - 1;
+            int slot = home(key, mask);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int home(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+}
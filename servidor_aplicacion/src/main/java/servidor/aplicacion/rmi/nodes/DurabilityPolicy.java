@@ -0,0 +1,77 @@
+package servidor.aplicacion.rmi.nodes;
+
+/**
+ * Política de durabilidad de las escrituras de un nodo de almacenamiento.
+ * - NONE: se confirma en cuanto los datos están en la caché del sistema operativo
+ * - BATCH: las escrituras concurrentes se agrupan y un solo force() las cubre,
+ *   al cumplirse el intervalo o al acumular el volumen configurado
+ * - ALWAYS: se fuerza a disco antes de cada confirmación; las escrituras que
+ *   llegan durante un force() se agrupan en el siguiente
+ *
+ * Se configura con -Dstorage.fsync=none|batch|always,
+ * -Dstorage.fsync.intervalMs y -Dstorage.fsync.bytes.
+ */
+public final class DurabilityPolicy {
+
+    public enum Mode {
+        NONE, BATCH, ALWAYS
+    }
+
+    public static final long DEFAULT_BATCH_INTERVAL_MILLIS = 10;
+    public static final long DEFAULT_BATCH_BYTES = 4L * 1024 * 1024;
+
+    private final Mode mode;
+    private final long intervalMillis;
+    private final long bytes;
+
+    private DurabilityPolicy(Mode mode, long intervalMillis, long bytes) {
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+        this.bytes = bytes;
+    }
+
+    public static DurabilityPolicy none() {
+        return new DurabilityPolicy(Mode.NONE, 0, 0);
+    }
+
+    public static DurabilityPolicy always() {
+        return new DurabilityPolicy(Mode.ALWAYS, 0, 0);
+    }
+
+    public static DurabilityPolicy batch(long intervalMillis, long bytes) {
+        return new DurabilityPolicy(Mode.BATCH, intervalMillis, bytes);
+    }
+
+    // Política configurada por propiedades del sistema (por defecto BATCH)
+    public static DurabilityPolicy fromSystemProperties() {
+        String mode = System.getProperty("storage.fsync", "batch").trim().toLowerCase();
+        switch (mode) {
+            case "none":
+                return none();
+            case "always":
+                return always();
+            case "batch":
+                return batch(Long.getLong("storage.fsync.intervalMs", DEFAULT_BATCH_INTERVAL_MILLIS),
+                        Long.getLong("storage.fsync.bytes", DEFAULT_BATCH_BYTES));
+            default:
+                throw new IllegalArgumentException("Unknown storage.fsync policy: " + mode);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.BATCH ? "batch(" + intervalMillis + "ms, " + bytes + " bytes)" : mode.name().toLowerCase();
+    }
+}
@@ -0,0 +1,153 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Confirmación agrupada (group commit) de escrituras.
+ * - Cada escritura registra un número de secuencia al añadirse al segmento
+ * - Un hilo dedicado fuerza a disco todo lo pendiente con un solo force() y
+ *   despierta a las escrituras cubiertas
+ * - Si un force() falla, el fallo es definitivo: ninguna escritura posterior se
+ *   confirma, porque tras un fsync fallido no se sabe qué llegó al disco
+ */
+final class GroupCommitter {
+    private static final Logger logger = Logger.getLogger(GroupCommitter.class.getName());
+
+    // Acción que lleva a disco todo lo escrito hasta el momento
+    @FunctionalInterface
+    interface ForceAction {
+        void force() throws IOException;
+    }
+
+    private final DurabilityPolicy policy;
+    private final ForceAction forceAction;
+    private final Object monitor;
+    private final Thread flusher;
+
+    // Protegidos por monitor
+    private long appended;
+    private long durable;
+    private long pendingBytes;
+    private long firstPendingNanos;
+    private IOException failure;
+    private boolean running;
+
+    GroupCommitter(DurabilityPolicy policy, ForceAction forceAction, String name) {
+        this.policy = policy;
+        this.forceAction = forceAction;
+        this.monitor = new Object();
+        this.running = true;
+        this.flusher = new Thread(this::run, "group-commit-" + name);
+        this.flusher.setDaemon(true);
+        if (policy.getMode() != DurabilityPolicy.Mode.NONE) {
+            flusher.start();
+        }
+    }
+
+    // Registrar una escritura ya añadida al segmento; devuelve su número de secuencia
+    long register(int bytes) {
+        synchronized (monitor) {
+            // La primera escritura pendiente despierta al hilo, que arranca el intervalo del lote
+            boolean first = appended == durable;
+            if (first) {
+                firstPendingNanos = System.nanoTime();
+            }
+            appended++;
+            pendingBytes += bytes;
+            if (first || policy.getMode() == DurabilityPolicy.Mode.ALWAYS || pendingBytes >= policy.getBytes()) {
+                monitor.notifyAll();
+            }
+            return appended;
+        }
+    }
+
+    // Esperar a que la escritura con ese número de secuencia esté en disco
+    void awaitDurable(long sequence) throws IOException {
+        if (policy.getMode() == DurabilityPolicy.Mode.NONE) {
+            return;
+        }
+        synchronized (monitor) {
+            while (durable < sequence) {
+                if (failure != null) {
+                    throw new IOException("Storage sync failed, write not durable", failure);
+                }
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for sync", e);
+                }
+            }
+        }
+    }
+
+    // Detener el hilo forzando antes lo pendiente
+    void close() {
+        synchronized (monitor) {
+            running = false;
+            monitor.notifyAll();
+        }
+        if (flusher.isAlive()) {
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(policy.getIntervalMillis());
+
+        while (true) {
+            long target;
+            synchronized (monitor) {
+                while (running && appended == durable) {
+                    waitQuietly(0);
+                }
+                if (appended == durable) {
+                    return;
+                }
+
+                // En BATCH esperar a completar el intervalo o el volumen antes de forzar
+                if (policy.getMode() == DurabilityPolicy.Mode.BATCH) {
+                    long remaining;
+                    while (running && pendingBytes < policy.getBytes()
+                            && (remaining = firstPendingNanos + intervalNanos - System.nanoTime()) > 0) {
+                        waitQuietly(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                    }
+                }
+
+                target = appended;
+                pendingBytes = 0;
+            }
+
+            try {
+                forceAction.force();
+                synchronized (monitor) {
+                    durable = target;
+                    firstPendingNanos = System.nanoTime();
+                    monitor.notifyAll();
+                }
+            } catch (IOException e) {
+                logger.severe("Storage sync failed, no further writes will be acknowledged: " + e.getMessage());
+                synchronized (monitor) {
+                    failure = e;
+                    monitor.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // Debe llamarse con monitor tomado
+    private void waitQuietly(long millis) {
+        try {
+            monitor.wait(millis);
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+}
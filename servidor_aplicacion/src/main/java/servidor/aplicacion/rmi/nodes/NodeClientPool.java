@@ -0,0 +1,326 @@
+package servidor.aplicacion.rmi.nodes;
+
+import servidor.aplicacion.interfaces.NodeInterface;
+import servidor.aplicacion.model.Node;
+
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Pool de stubs RMI de nodos de almacenamiento indexado por ID de nodo.
+ * - Reutiliza el stub resuelto en lugar de hacer Naming.lookup por operación
+ * - Vuelve a resolver el stub cuando una llamada lanza RemoteException, y
+ *   solo reintenta si no llegó a conectar con el nodo (ConnectException o
+ *   NoSuchObjectException): las escrituras y borrados no se repiten a ciegas
+ * - Limita las operaciones simultáneas en vuelo hacia cada nodo
+ * - Mantiene una media móvil exponencial (EWMA) de la latencia de cada nodo
+ * - Envía los bytes de los chunks por el plano de datos binario (ChunkDataClient)
+ *   cuando el nodo lo ofrece, volviendo a RMI si no está disponible. Si la
+ *   petición ya se envió y falla (p. ej. por timeout), una escritura o borrado
+ *   no se repite por RMI sino que se propaga el error; las lecturas sí
+ */
+public class NodeClientPool {
+    private static final Logger logger = Logger.getLogger(NodeClientPool.class.getName());
+
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_NODE = 8;
+    // Peso de la última muestra en la EWMA de latencia
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    // Espera antes de reintentar el plano de datos de un nodo que no lo ofrece o falló
+    private static final long DATA_PLANE_RETRY_NANOS = 30_000_000_000L;
+
+    // Operación remota a ejecutar sobre el stub de un nodo
+    @FunctionalInterface
+    public interface NodeOperation<T> {
+        T execute(NodeInterface node) throws RemoteException;
+    }
+
+    // Operación sobre la conexión del plano de datos de un nodo
+    @FunctionalInterface
+    public interface DataOperation<T> {
+        T execute(ChunkDataClient client) throws IOException;
+    }
+
+    private final ConcurrentHashMap<Long, NodeEntry> entries;
+    private final int maxInFlightPerNode;
+    private final boolean dataPlaneEnabled;
+
+    public NodeClientPool() {
+        this(DEFAULT_MAX_IN_FLIGHT_PER_NODE);
+    }
+
+    public NodeClientPool(int maxInFlightPerNode) {
+        this.entries = new ConcurrentHashMap<>();
+        this.maxInFlightPerNode = maxInFlightPerNode;
+        this.dataPlaneEnabled = Boolean.parseBoolean(System.getProperty("storage.dataplane", "true"));
+    }
+
+    // Ejecutar una operación sobre el nodo respetando su límite de operaciones en vuelo
+    public <T> T execute(Node node, NodeOperation<T> operation) throws Exception {
+        NodeEntry entry = entryFor(node);
+
+        entry.permits.acquire();
+        try {
+            return executeRmi(entry, node, operation);
+        } finally {
+            entry.permits.release();
+        }
+    }
+
+    // Ejecutar por el plano de datos si está disponible; si no, o si la petición no llegó a enviarse, por RMI
+    public <T> T execute(Node node, DataOperation<T> dataOperation, NodeOperation<T> rmiOperation) throws Exception {
+        return execute(node, dataOperation, rmiOperation, false);
+    }
+
+    // Con idempotent la operación se repite por RMI ante cualquier error del plano de datos
+    private <T> T execute(Node node, DataOperation<T> dataOperation, NodeOperation<T> rmiOperation,
+                          boolean idempotent) throws Exception {
+        NodeEntry entry = entryFor(node);
+
+        entry.permits.acquire();
+        try {
+            ChunkDataClient client = dataPlaneEnabled ? entry.getDataClient(node) : null;
+            if (client != null) {
+                long start = System.nanoTime();
+                try {
+                    T result = dataOperation.execute(client);
+                    entry.recordLatency(System.nanoTime() - start);
+                    return result;
+                } catch (IOException e) {
+                    entry.dropDataClient(client);
+                    if (!idempotent && !(e instanceof ChunkDataClient.RequestNotSentException)) {
+                        // El nodo pudo haber ejecutado la operación: repetirla por RMI no es seguro
+                        throw e;
+                    }
+                    logger.warning("Error en el plano de datos del nodo " + node.getRmiUrl() + ", se usa RMI: "
+                            + e.getMessage());
+                }
+            }
+            return executeRmi(entry, node, rmiOperation);
+        } finally {
+            entry.permits.release();
+        }
+    }
+
+    public boolean storeChunk(Node node, String fileId, int chunkNumber, byte[] data) throws Exception {
+        return execute(node, client -> client.put(fileId, chunkNumber, data),
+                stub -> stub.storeFileChunk(fileId, chunkNumber, data));
+    }
+
+    // Guardar en el nodo cabeza y propagar por la cadena; una confirmación por nodo, empezando por la cabeza
+    public boolean[] storeChunkChain(Node head, String fileId, int chunkNumber, byte[] data, List<String> downstreamUrls)
+            throws Exception {
+        return execute(head, client -> client.putChain(fileId, chunkNumber, data, downstreamUrls),
+                stub -> stub.storeFileChunkChain(fileId, chunkNumber, data, downstreamUrls));
+    }
+
+    public byte[] retrieveChunk(Node node, String fileId, int chunkNumber) throws Exception {
+        return execute(node, client -> client.get(fileId, chunkNumber),
+                stub -> stub.retrieveFileChunk(fileId, chunkNumber), true);
+    }
+
+    /**
+     * Recupera un chunk sin bloquear a quien llama, para poder lanzar lecturas
+     * de cobertura a otra réplica. Por el plano de datos la petición se
+     * encadena en la conexión y el permiso del nodo se libera al llegar la
+     * respuesta; cancelar el futuro solo hace que se descarte. Sin conexión
+     * abierta o con el nodo saturado, la llamada síncrona (que puede resolver
+     * el stub y conectar) espera en el executor.
+     */
+    public CompletableFuture<byte[]> retrieveChunkAsync(Node node, String fileId, int chunkNumber, Executor executor) {
+        NodeEntry entry = entryFor(node);
+        ChunkDataClient client = dataPlaneEnabled ? entry.openDataClient() : null;
+        if (client == null || !entry.permits.tryAcquire()) {
+            return supplyAsync(() -> retrieveChunk(node, fileId, chunkNumber), executor);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<byte[]> request = client.getAsync(fileId, chunkNumber);
+        request.whenComplete((data, error) -> entry.permits.release());
+        return request
+                .thenApply(data -> {
+                    entry.recordLatency(System.nanoTime() - start);
+                    return data;
+                })
+                .exceptionallyComposeAsync(error -> {
+                    logger.warning("Error en el plano de datos del nodo " + node.getRmiUrl() + ", se usa RMI: "
+                            + error.getMessage());
+                    entry.dropDataClient(client);
+                    return supplyAsync(() -> execute(node, stub -> stub.retrieveFileChunk(fileId, chunkNumber)), executor);
+                }, executor);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(Callable<T> call, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    public boolean deleteChunk(Node node, String fileId, int chunkNumber) throws Exception {
+        return execute(node, client -> client.delete(fileId, chunkNumber),
+                stub -> stub.deleteFileChunk(fileId, chunkNumber));
+    }
+
+    private NodeEntry entryFor(Node node) {
+        return entries.computeIfAbsent(node.getId(), id -> new NodeEntry(maxInFlightPerNode));
+    }
+
+    // Debe llamarse con un permiso del nodo tomado
+    private <T> T executeRmi(NodeEntry entry, Node node, NodeOperation<T> operation) throws Exception {
+        try {
+            NodeInterface stub = entry.getStub(node.getRmiUrl());
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = operation.execute(stub);
+            } catch (ConnectException | NoSuchObjectException e) {
+                // El stub quedó obsoleto (p. ej. el nodo se reinició) y la llamada no llegó a ejecutarse:
+                // resolver y reintentar una vez
+                logger.warning("Stub obsoleto para el nodo " + node.getRmiUrl() + ", resolviendo de nuevo: "
+                        + e.getMessage());
+                entry.invalidate(stub);
+                start = System.nanoTime();
+                result = operation.execute(entry.getStub(node.getRmiUrl()));
+            }
+            entry.recordLatency(System.nanoTime() - start);
+            return result;
+        } catch (RemoteException e) {
+            entry.invalidate(null);
+            throw e;
+        }
+    }
+
+    // Operaciones actualmente en vuelo hacia un nodo
+    public int getInFlight(Long nodeId) {
+        NodeEntry entry = entries.get(nodeId);
+        return entry != null ? maxInFlightPerNode - entry.permits.availablePermits() : 0;
+    }
+
+    // Latencia media reciente hacia un nodo en milisegundos (-1 si aún no hay muestras)
+    public double getLatencyMillis(Long nodeId) {
+        NodeEntry entry = entries.get(nodeId);
+        return entry != null ? entry.latencyEwmaMillis : -1;
+    }
+
+    public int getMaxInFlightPerNode() {
+        return maxInFlightPerNode;
+    }
+
+    // Descartar el stub y la conexión de datos de un nodo (p. ej. al marcarlo offline)
+    public void invalidate(Long nodeId) {
+        NodeEntry entry = entries.get(nodeId);
+        if (entry != null) {
+            entry.invalidate(null);
+            entry.dropDataClient(null);
+        }
+    }
+
+    // Descartar todos los stubs y conexiones de datos
+    public void clear() {
+        for (NodeEntry entry : entries.values()) {
+            entry.invalidate(null);
+            entry.dropDataClient(null);
+        }
+    }
+
+    // Stub cacheado y límite de concurrencia de un nodo
+    private static class NodeEntry {
+        final Semaphore permits;
+        private volatile NodeInterface stub;
+        private volatile String url;
+        private volatile double latencyEwmaMillis = -1;
+        private volatile ChunkDataClient dataClient;
+        private final Object dataLock = new Object();
+        private long dataRetryAtNanos = System.nanoTime();
+
+        NodeEntry(int maxInFlight) {
+            this.permits = new Semaphore(maxInFlight, true);
+        }
+
+        NodeInterface getStub(String nodeUrl) throws Exception {
+            NodeInterface current = stub;
+            if (current != null && nodeUrl.equals(url)) {
+                return current;
+            }
+            synchronized (this) {
+                if (stub == null || !nodeUrl.equals(url)) {
+                    stub = (NodeInterface) Naming.lookup(nodeUrl);
+                    url = nodeUrl;
+                    logger.info("Stub resuelto para el nodo de almacenamiento: " + nodeUrl);
+                }
+                return stub;
+            }
+        }
+
+        // Conexión ya abierta al plano de datos, sin bloquear; null si no hay
+        ChunkDataClient openDataClient() {
+            ChunkDataClient current = dataClient;
+            return current != null && current.isOpen() ? current : null;
+        }
+
+        // Conexión al plano de datos del nodo; null si no lo ofrece o falló hace poco
+        ChunkDataClient getDataClient(Node node) {
+            ChunkDataClient current = dataClient;
+            if (current != null && current.isOpen()) {
+                return current;
+            }
+            synchronized (dataLock) {
+                if (dataClient != null && dataClient.isOpen()) {
+                    return dataClient;
+                }
+                if (System.nanoTime() - dataRetryAtNanos < 0) {
+                    return null;
+                }
+                try {
+                    int dataPort = getStub(node.getRmiUrl()).getDataPort();
+                    if (dataPort > 0) {
+                        dataClient = ChunkDataClient.connect(node.getIp(), dataPort);
+                        return dataClient;
+                    }
+                } catch (Exception e) {
+                    logger.fine("Plano de datos no disponible en el nodo " + node.getRmiUrl() + ": " + e.getMessage());
+                }
+                dataRetryAtNanos = System.nanoTime() + DATA_PLANE_RETRY_NANOS;
+                return null;
+            }
+        }
+
+        // Cierra la conexión de datos si sigue siendo la indicada (null la cierra siempre)
+        void dropDataClient(ChunkDataClient stale) {
+            synchronized (dataLock) {
+                if (dataClient != null && (stale == null || dataClient == stale)) {
+                    dataClient.close();
+                    dataClient = null;
+                }
+            }
+        }
+
+        synchronized void recordLatency(long nanos) {
+            double millis = nanos / 1_000_000.0;
+            latencyEwmaMillis = latencyEwmaMillis < 0
+                    ? millis
+                    : LATENCY_EWMA_ALPHA * millis + (1 - LATENCY_EWMA_ALPHA) * latencyEwmaMillis;
+        }
+
+        // Invalida el stub si sigue siendo el indicado (null invalida siempre)
+        synchronized void invalidate(NodeInterface stale) {
+            if (stale == null || stub == stale) {
+                stub = null;
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package servidor.aplicacion.rmi.nodes;
 
+import servidor.aplicacion.dto.ChunkTransferDTO;
 import servidor.aplicacion.interfaces.NodeInterface;
 
+import java.io.IOException;
+import java.net.URI;
 import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.util.List;
@@ -11,6 +14,8 @@ public class RMIStorageNodeClient {
     private static final Logger logger = Logger.getLogger(RMIStorageNodeClient.class.getName());
     private NodeInterface nodeInterface;
     private String nodeUrl;
+    // Conexión al plano de datos binario; null si el nodo no lo ofrece
+    private ChunkDataClient dataClient;
     
     public RMIStorageNodeClient(String nodeUrl) {
         this.nodeUrl = nodeUrl;
@@ -21,6 +26,7 @@ public class RMIStorageNodeClient {
         try {
             this.nodeInterface = (NodeInterface) Naming.lookup(nodeUrl);
             logger.info("Connected to storage node: " + nodeUrl);
+            connectDataPlane();
             return true;
         } catch (Exception e) {
             logger.severe("Failed to connect to storage node " + nodeUrl + ": " + e.getMessage());
@@ -30,6 +36,10 @@ public class RMIStorageNodeClient {
     
     // Cerrar conexión con nodo de almacenamiento
     public void disconnect() {
+        if (dataClient != null) {
+            dataClient.close();
+            dataClient = null;
+        }
         this.nodeInterface = null;
         logger.info("Disconnected from storage node: " + nodeUrl);
     }
@@ -47,7 +57,15 @@ public class RMIStorageNodeClient {
         }
         
         try {
-            boolean result = nodeInterface.storeFileChunk(fileId, chunkNumber, data);
+            boolean result;
+            ChunkDataClient client = openDataClient();
+            try {
+                result = client != null ? client.put(fileId, chunkNumber, data)
+                        : nodeInterface.storeFileChunk(fileId, chunkNumber, data);
+            } catch (IOException e) {
+                dropDataClient(e);
+                result = nodeInterface.storeFileChunk(fileId, chunkNumber, data);
+            }
             if (result) {
                 logger.info("Successfully stored chunk " + chunkNumber + " of file " + fileId);
             } else {
@@ -68,7 +86,15 @@ public class RMIStorageNodeClient {
         }
         
         try {
-            byte[] data = nodeInterface.retrieveFileChunk(fileId, chunkNumber);
+            byte[] data;
+            ChunkDataClient client = openDataClient();
+            try {
+                data = client != null ? client.get(fileId, chunkNumber)
+                        : nodeInterface.retrieveFileChunk(fileId, chunkNumber);
+            } catch (IOException e) {
+                dropDataClient(e);
+                data = nodeInterface.retrieveFileChunk(fileId, chunkNumber);
+            }
             if (data != null) {
                 logger.info("Successfully retrieved chunk " + chunkNumber + " of file " + fileId);
             } else {
@@ -89,7 +115,15 @@ public class RMIStorageNodeClient {
         }
         
         try {
-            boolean result = nodeInterface.deleteFileChunk(fileId, chunkNumber);
+            boolean result;
+            ChunkDataClient client = openDataClient();
+            try {
+                result = client != null ? client.delete(fileId, chunkNumber)
+                        : nodeInterface.deleteFileChunk(fileId, chunkNumber);
+            } catch (IOException e) {
+                dropDataClient(e);
+                result = nodeInterface.deleteFileChunk(fileId, chunkNumber);
+            }
             if (result) {
                 logger.info("Successfully deleted chunk " + chunkNumber + " of file " + fileId);
             } else {
@@ -102,6 +136,71 @@ public class RMIStorageNodeClient {
         }
     }
     
+    // Enviar varios fragmentos en una sola llamada; indica cuáles se almacenaron
+    public boolean[] storeFileChunks(List<ChunkTransferDTO> chunks) {
+        if (!isConnected()) {
+            logger.warning("Not connected to storage node");
+            return new boolean[chunks.size()];
+        }
+        
+        try {
+            boolean[] result = nodeInterface.storeFileChunks(chunks);
+            logger.info("Stored batch of " + chunks.size() + " chunks on " + nodeUrl);
+            return result;
+        } catch (RemoteException e) {
+            logger.severe("RMI error storing chunk batch: " + e.getMessage());
+            return new boolean[chunks.size()];
+        }
+    }
+    
+    // Obtener varios fragmentos en una sola llamada (null en los que no existen)
+    public List<byte[]> retrieveFileChunks(List<ChunkTransferDTO> chunks) {
+        if (!isConnected()) {
+            logger.warning("Not connected to storage node");
+            return null;
+        }
+        
+        try {
+            List<byte[]> result = nodeInterface.retrieveFileChunks(chunks);
+            logger.info("Retrieved batch of " + chunks.size() + " chunks from " + nodeUrl);
+            return result;
+        } catch (RemoteException e) {
+            logger.severe("RMI error retrieving chunk batch: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // Eliminar todos los fragmentos de un archivo; devuelve cuántos se eliminaron
+    public int deleteFileChunks(String fileId) {
+        if (!isConnected()) {
+            logger.warning("Not connected to storage node");
+            return 0;
+        }
+        
+        try {
+            int deleted = nodeInterface.deleteFileChunks(fileId);
+            logger.info("Deleted " + deleted + " chunks of file " + fileId + " on " + nodeUrl);
+            return deleted;
+        } catch (RemoteException e) {
+            logger.severe("RMI error deleting chunks of file: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    // Verificar la existencia de varios fragmentos en una sola llamada
+    public boolean[] hasFiles(List<ChunkTransferDTO> chunks) {
+        if (!isConnected()) {
+            return new boolean[chunks.size()];
+        }
+        
+        try {
+            return nodeInterface.hasFiles(chunks);
+        } catch (RemoteException e) {
+            logger.severe("RMI error checking chunk batch existence: " + e.getMessage());
+            return new boolean[chunks.size()];
+        }
+    }
+    
     // Obtener lista de archivos almacenados en el nodo
     public List<String> listStoredFiles() {
         if (!isConnected()) {
@@ -237,4 +336,55 @@ public class RMIStorageNodeClient {
             return false;
         }
     }
+    
+    // Guardar en este nodo y propagar a los nodos siguientes; una confirmación por nodo
+    public boolean[] storeFileChunkChain(String fileId, int chunkNumber, byte[] data, List<String> downstreamUrls) {
+        if (!isConnected()) {
+            logger.warning("Not connected to storage node");
+            return new boolean[downstreamUrls.size() + 1];
+        }
+        
+        ChunkDataClient client = openDataClient();
+        if (client != null) {
+            try {
+                return client.putChain(fileId, chunkNumber, data, downstreamUrls);
+            } catch (IOException e) {
+                dropDataClient(e);
+            }
+        }
+        
+        try {
+            return nodeInterface.storeFileChunkChain(fileId, chunkNumber, data, downstreamUrls);
+        } catch (RemoteException e) {
+            logger.severe("RMI error storing chunk chain: " + e.getMessage());
+            return new boolean[downstreamUrls.size() + 1];
+        }
+    }
+    
+    // Abrir la conexión al plano de datos si el nodo publica un puerto de datos
+    private void connectDataPlane() {
+        try {
+            int dataPort = nodeInterface.getDataPort();
+            if (dataPort > 0) {
+                dataClient = ChunkDataClient.connect(URI.create(nodeUrl).getHost(), dataPort);
+            }
+        } catch (Exception e) {
+            logger.warning("Data plane unavailable for " + nodeUrl + ", using RMI: " + e.getMessage());
+            dataClient = null;
+        }
+    }
+    
+    private ChunkDataClient openDataClient() {
+        ChunkDataClient client = dataClient;
+        return client != null && client.isOpen() ? client : null;
+    }
+    
+    // Tras un error del plano de datos se sigue solo por RMI
+    private void dropDataClient(IOException cause) {
+        logger.warning("Data plane error for " + nodeUrl + ", falling back to RMI: " + cause.getMessage());
+        if (dataClient != null) {
+            dataClient.close();
+            dataClient = null;
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Instantánea persistida del índice de un SegmentStore.
+ * - Guarda, para cada segmento, hasta dónde estaba indexado y sus bytes vivos,
+ *   y la ubicación de cada chunk vivo
+ * - Desde la versión 2 las claves numéricas se guardan como (fileId, chunk)
+ *   empaquetados, igual que en ChunkIndex; la versión 1 (claves en texto) se sigue leyendo
+ * - Se escribe en un archivo temporal y se renombra de forma atómica
+ * - Termina con un CRC32 de todo el contenido; si no coincide se descarta
+ *
+ * Los segmentos hacen de journal: al abrir solo se releen los registros
+ * añadidos después de la posición guardada en la instantánea.
+ */
+final class SegmentIndexSnapshot {
+
+    private static final int SNAPSHOT_MAGIC = 0x49445831; // "IDX1"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int TEXT_KEYS_VERSION = 1;
+    private static final byte ENTRY_PACKED = 0;
+    private static final byte ENTRY_TEXT = 1;
+
+    private SegmentIndexSnapshot() {
+    }
+
+    // Leer la instantánea en una pasada secuencial cargando las entradas en el índice;
+    // IOException si está dañada (el índice puede quedar a medio cargar)
+    static List<SegmentState> read(Path path, ChunkIndex index) throws IOException {
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Bad snapshot magic");
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION && version != TEXT_KEYS_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+
+            int segmentCount = in.readInt();
+            List<SegmentState> segments = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                segments.add(new SegmentState(in.readInt(), in.readLong(), in.readLong()));
+            }
+
+            int entryCount = in.readInt();
+            if (entryCount < 0) {
+                throw new IOException("Bad snapshot entry count " + entryCount);
+            }
+            for (int i = 0; i < entryCount; i++) {
+                if (version == TEXT_KEYS_VERSION) {
+                    String key = in.readUTF();
+                    index.put(key, new SegmentStore.ChunkLocation(in.readInt(), in.readLong(), in.readInt(), in.readInt()));
+                    continue;
+                }
+
+                byte kind = in.readByte();
+                if (kind == ENTRY_PACKED) {
+                    index.putPacked(in.readLong(), in.readInt(), in.readLong(), in.readInt());
+                } else if (kind == ENTRY_TEXT) {
+                    String key = in.readUTF();
+                    long position = in.readLong();
+                    int length = in.readInt();
+                    int recordLength = SegmentStore.HEADER_SIZE + key.getBytes(StandardCharsets.UTF_8).length + length;
+                    index.put(key, new SegmentStore.ChunkLocation(ChunkIndex.segmentOf(position),
+                            ChunkIndex.offsetOf(position), length, recordLength));
+                } else {
+                    throw new IOException("Bad snapshot entry kind " + kind);
+                }
+            }
+
+            // El CRC cubre todo lo anterior; se lee directamente del flujo sin verificar
+            long expected = new DataInputStream(raw).readLong();
+            if (expected != crc.getValue()) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            return segments;
+        }
+    }
+
+    // Escribir la instantánea de forma atómica (temporal + fsync + rename)
+    static void write(Path path, List<SegmentState> segments, ChunkIndex entries) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+
+            out.writeInt(segments.size());
+            for (SegmentState segment : segments) {
+                out.writeInt(segment.id);
+                out.writeLong(segment.writePosition);
+                out.writeLong(segment.liveBytes);
+            }
+
+            out.writeInt(entries.size());
+            entries.forEach((fileId, chunkKey, otherKey, position, length) -> {
+                if (otherKey == null) {
+                    out.writeByte(ENTRY_PACKED);
+                    out.writeLong(fileId);
+                    out.writeInt(chunkKey);
+                } else {
+                    out.writeByte(ENTRY_TEXT);
+                    out.writeUTF(otherKey);
+                }
+                out.writeLong(position);
+                out.writeInt(length);
+            });
+
+            out.flush();
+            new DataOutputStream(raw).writeLong(crc.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Estado de un segmento en el momento de la instantánea
+    static final class SegmentState {
+        final int id;
+        final long writePosition;
+        final long liveBytes;
+
+        SegmentState(int id, long writePosition, long liveBytes) {
+            this.id = id;
+            this.writePosition = writePosition;
+            this.liveBytes = liveBytes;
+        }
+    }
+}
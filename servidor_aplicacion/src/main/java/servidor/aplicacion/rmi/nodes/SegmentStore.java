@@ -0,0 +1,778 @@
+package servidor.aplicacion.rmi.nodes;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Almacén de chunks estructurado en log para un nodo de almacenamiento.
+ * - Los chunks se añaden al final de segmentos grandes preasignados
+ *   (segment_XXXXXXXX.seg) en lugar de crear un archivo por chunk
+ * - Un índice compacto en memoria (ChunkIndex) mapea cada chunk a segmento/offset/longitud
+ * - Los borrados escriben un registro tumba; el espacio muerto se recupera con
+ *   una compactación en segundo plano que copia los registros vivos
+ * - El índice se persiste periódicamente en una instantánea (index.snapshot); al
+ *   arrancar se carga y solo se releen los registros posteriores. Si falta o está
+ *   dañada, el índice se reconstruye leyendo las cabeceras de los segmentos
+ * - Las escrituras se confirman según la DurabilityPolicy: con BATCH y ALWAYS un
+ *   GroupCommitter cubre muchas escrituras concurrentes con un solo force()
+ * - Las lecturas se sirven desde el segmento mapeado en memoria (una sola copia
+ *   hacia el arreglo devuelto) o, con transferChunk, directamente del canal del
+ *   segmento a otro canal sin pasar por el heap
+ *
+ * Formato de registro: magic(4) tipo(1) longClave(2) chunk(4) longDatos(4) crc32(4) clave datos
+ * En las tumbas el campo chunk guarda el segmento del PUT que anulan (0 en tumbas antiguas)
+ */
+public class SegmentStore {
+    private static final Logger logger = Logger.getLogger(SegmentStore.class.getName());
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int RECORD_MAGIC = 0x43484B31; // "CHK1"
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    static final int HEADER_SIZE = 19;
+
+    // Compactar segmentos sellados con menos de esta fracción de bytes vivos
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+    private static final int COMPACTION_INTERVAL_SECONDS = 60;
+    // Tiempo que se mantiene abierto un segmento compactado para lecturas en curso
+    private static final int RETIRED_SEGMENT_GRACE_SECONDS = 30;
+    private static final int CHECKPOINT_INTERVAL_SECONDS = 30;
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean mappedReads;
+    private final DurabilityPolicy durability;
+    private final GroupCommitter committer;
+    private final ChunkIndex index;
+    private final ConcurrentSkipListMap<Integer, Segment> segments;
+    private final Object writeLock;
+    private final ScheduledThreadPoolExecutor maintenance;
+    private final Path snapshotPath;
+    // Cambios aplicados al índice y cantidad reflejada en la última instantánea
+    private final AtomicLong mutations;
+    private long checkpointedMutations;
+    private volatile Segment active;
+
+    public SegmentStore(Path directory) {
+        this(directory, Long.getLong("storage.segment.size", DEFAULT_SEGMENT_SIZE),
+                !"false".equalsIgnoreCase(System.getProperty("storage.read.mmap")),
+                DurabilityPolicy.fromSystemProperties());
+    }
+
+    public SegmentStore(Path directory, long segmentSize, boolean mappedReads, DurabilityPolicy durability) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.mappedReads = mappedReads;
+        this.index = new ChunkIndex();
+        this.segments = new ConcurrentSkipListMap<>();
+        this.writeLock = new Object();
+        this.maintenance = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "segment-compactor-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Al cerrar no esperar los borrados diferidos; los segmentos retirados se limpian al abrir
+        this.maintenance.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.mutations = new AtomicLong();
+        this.durability = durability;
+        this.committer = new GroupCommitter(durability, this::forceSegments, String.valueOf(directory.getParent()));
+    }
+
+    // Abrir los segmentos existentes, reconstruir el índice y arrancar el mantenimiento
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> segmentFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> isSegmentFile(path.getFileName().toString())).forEach(segmentFiles::add);
+        }
+        for (Path path : segmentFiles) {
+            Segment segment = Segment.open(parseSegmentId(path.getFileName().toString()), path);
+            segments.put(segment.id, segment);
+        }
+
+        // Posición desde la que releer cada segmento (0 para los que no cubre la instantánea)
+        Map<Integer, Long> replayFrom = loadSnapshot();
+
+        List<Segment> ordered = new ArrayList<>(segments.values());
+        for (int i = 0; i < ordered.size(); i++) {
+            Segment segment = ordered.get(i);
+            long start = replayFrom.getOrDefault(segment.id, 0L);
+
+            // Solo el último segmento puede tener un registro a medio escribir: verificar su CRC
+            boolean last = i == ordered.size() - 1;
+            long end = scan(segment, start, last,
+                    (type, key, chunkNumber, dataOffset, dataLength, recordOffset, recordLength) ->
+                            replay(segment, type, key, dataOffset, dataLength, recordLength));
+            segment.writePosition = end;
+            segment.forcedPosition = end;
+        }
+
+        synchronized (writeLock) {
+            active = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+        }
+
+        maintenance.scheduleWithFixedDelay(this::compact,
+                COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        maintenance.scheduleWithFixedDelay(this::checkpoint,
+                CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        logger.info("Segment store opened at " + directory + ": " + segments.size() + " segments, "
+                + index.size() + " chunks" + (replayFrom.isEmpty() ? " (full scan)" : " (from snapshot)")
+                + ", fsync policy " + durability);
+    }
+
+    // Cargar la instantánea del índice; devuelve vacío si no existe o no es utilizable
+    private Map<Integer, Long> loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return Map.of();
+        }
+
+        try {
+            List<SegmentIndexSnapshot.SegmentState> snapshotStates = SegmentIndexSnapshot.read(snapshotPath, index);
+
+            Set<Integer> snapshotSegments = new HashSet<>();
+            int lastSnapshotSegment = 0;
+            for (SegmentIndexSnapshot.SegmentState state : snapshotStates) {
+                Segment segment = segments.get(state.id);
+                if (segment == null || state.writePosition > segment.capacity) {
+                    throw new IOException("Segment " + state.id + " referenced by snapshot is missing or shorter");
+                }
+                snapshotSegments.add(state.id);
+                lastSnapshotSegment = Math.max(lastSnapshotSegment, state.id);
+            }
+
+            // Los segmentos anteriores a la instantánea que no figuran en ella ya fueron compactados
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment.id <= lastSnapshotSegment && !snapshotSegments.contains(segment.id)) {
+                    segments.remove(segment.id);
+                    segment.close();
+                    Files.deleteIfExists(segment.path);
+                    logger.info("Removed retired segment " + segment.path.getFileName());
+                }
+            }
+
+            Map<Integer, Long> replayFrom = new HashMap<>();
+            for (SegmentIndexSnapshot.SegmentState state : snapshotStates) {
+                segments.get(state.id).liveBytes.set(state.liveBytes);
+                replayFrom.put(state.id, state.writePosition);
+            }
+            return replayFrom;
+
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Index snapshot " + snapshotPath + " is unusable, rebuilding from segments: "
+                    + e.getMessage());
+            index.clear();
+            for (Segment segment : segments.values()) {
+                segment.liveBytes.set(0);
+            }
+            return Map.of();
+        }
+    }
+
+    // Añadir (o reemplazar) un chunk y esperar a que sea durable según la política
+    public void put(String key, int chunkNumber, byte[] data) throws IOException {
+        awaitDurable(write(key, chunkNumber, data));
+    }
+
+    // Añadir un chunk sin esperar la durabilidad; devuelve la secuencia para awaitDurable.
+    // Permite que un lote de escrituras espere un único force()
+    public long write(String key, int chunkNumber, byte[] data) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int crc = checksum(keyBytes, data);
+
+        synchronized (writeLock) {
+            ChunkLocation location = append(TYPE_PUT, keyBytes, chunkNumber, data, crc);
+            replaceLocation(key, location);
+            return committer.register(location.recordLength);
+        }
+    }
+
+    public void awaitDurable(long sequence) throws IOException {
+        committer.awaitDurable(sequence);
+    }
+
+    // Leer un chunk; null si no existe
+    public byte[] get(String key) throws IOException {
+        ByteBuffer view = view(key);
+        if (view == null) {
+            return null;
+        }
+        byte[] data = new byte[view.remaining()];
+        view.get(data);
+        return data;
+    }
+
+    // Vista de solo lectura de los datos de un chunk sin copiarlos al heap; null si no existe
+    public ByteBuffer view(String key) throws IOException {
+        // Un segmento puede retirarse por compactación entre la búsqueda y la lectura: reintentar una vez
+        for (int attempt = 0; attempt < 2; attempt++) {
+            ChunkLocation location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+
+            Segment segment = segments.get(location.segmentId);
+            if (segment == null) {
+                continue;
+            }
+
+            try {
+                if (mappedReads) {
+                    return segment.mapped().slice((int) location.offset, location.length);
+                }
+                ByteBuffer buffer = ByteBuffer.allocateDirect(location.length);
+                readFully(segment.channel, buffer, location.offset);
+                buffer.flip();
+                return buffer.asReadOnlyBuffer();
+            } catch (ClosedChannelException e) {
+                logger.fine("Segment " + segment.id + " retired during read, retrying");
+            }
+        }
+        return null;
+    }
+
+    // Transferir los datos de un chunk a un canal (sendfile cuando el SO lo permite); -1 si no existe
+    public long transferChunk(String key, WritableByteChannel target) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            ChunkLocation location = index.get(key);
+            if (location == null) {
+                return -1;
+            }
+
+            Segment segment = segments.get(location.segmentId);
+            if (segment == null) {
+                continue;
+            }
+
+            long transferred = 0;
+            try {
+                while (transferred < location.length) {
+                    transferred += segment.channel.transferTo(location.offset + transferred,
+                            location.length - transferred, target);
+                }
+                return transferred;
+            } catch (ClosedChannelException e) {
+                // Si ya se enviaron bytes no se puede reintentar sin corromper el destino
+                if (transferred > 0 || !target.isOpen()) {
+                    throw e;
+                }
+                logger.fine("Segment " + segment.id + " retired during transfer, retrying");
+            }
+        }
+        return -1;
+    }
+
+    // Eliminar un chunk; false si no existía
+    public boolean delete(String key) throws IOException {
+        return deleteAll(List.of(key)) == 1;
+    }
+
+    // Eliminar varios chunks con una sola espera de durabilidad; devuelve cuántos existían
+    public int deleteAll(List<String> keys) throws IOException {
+        int deleted = 0;
+        long sequence = 0;
+        synchronized (writeLock) {
+            for (String key : keys) {
+                ChunkLocation previous = index.get(key);
+                if (previous == null) {
+                    continue;
+                }
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                append(TYPE_DELETE, keyBytes, previous.segmentId, new byte[0], checksum(keyBytes, new byte[0]));
+                index.remove(key);
+                markDead(previous);
+                mutations.incrementAndGet();
+                sequence = committer.register(HEADER_SIZE + keyBytes.length);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            committer.awaitDurable(sequence);
+        }
+        return deleted;
+    }
+
+    public boolean contains(String key) {
+        return index.contains(key);
+    }
+
+    public ChunkLocation locate(String key) {
+        return index.get(key);
+    }
+
+    public List<String> keys() {
+        return index.keys();
+    }
+
+    // IDs de archivo distintos con chunks en el almacén
+    public List<String> fileIds() {
+        return index.fileIds();
+    }
+
+    // Claves de los chunks guardados de un archivo
+    public List<String> keysOfFile(long fileId) {
+        return index.keysOfFile(fileId);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    // Bytes de datos de chunks vivos
+    public long liveDataBytes() {
+        return index.liveDataBytes();
+    }
+
+    // Detener el mantenimiento, persistir el índice y cerrar los segmentos
+    public void close() {
+        committer.close();
+        maintenance.shutdown();
+        try {
+            // No interrumpir: un hilo interrumpido durante E/S cierra el canal del segmento
+            maintenance.awaitTermination(COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (active != null) {
+            checkpoint();
+        }
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+        }
+    }
+
+    // Persistir una instantánea del índice si cambió desde la última
+    synchronized void checkpoint() {
+        if (mutations.get() == checkpointedMutations) {
+            return;
+        }
+
+        try {
+            long observed;
+            List<Segment> captured;
+            List<SegmentIndexSnapshot.SegmentState> states = new ArrayList<>();
+            ChunkIndex entries;
+            synchronized (writeLock) {
+                observed = mutations.get();
+                captured = new ArrayList<>(segments.values());
+                for (Segment segment : captured) {
+                    states.add(new SegmentIndexSnapshot.SegmentState(segment.id, segment.writePosition,
+                            segment.liveBytes.get()));
+                }
+                entries = index.copy();
+            }
+
+            // Los registros referenciados deben estar en disco antes que la instantánea
+            for (Segment segment : captured) {
+                segment.channel.force(false);
+            }
+            SegmentIndexSnapshot.write(snapshotPath, states, entries);
+            checkpointedMutations = observed;
+            logger.fine("Index snapshot written: " + entries.size() + " chunks");
+
+        } catch (IOException e) {
+            logger.warning("Could not write index snapshot: " + e.getMessage());
+        }
+    }
+
+    // Compactar los segmentos sellados con mucho espacio muerto
+    void compact() {
+        boolean compacted = false;
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment == active || segment.writePosition == 0) {
+                    continue;
+                }
+                double liveRatio = (double) segment.liveBytes.get() / segment.writePosition;
+                if (liveRatio < COMPACTION_LIVE_RATIO) {
+                    compactSegment(segment);
+                    compacted = true;
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Segment compaction failed: " + e.getMessage());
+        }
+
+        // La instantánea no debe seguir apuntando a segmentos que se van a borrar
+        if (compacted) {
+            checkpoint();
+        }
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        long before = segment.writePosition;
+        // Tumbas del segmento: clave -> segmento más reciente que puede tener el PUT anulado
+        Map<String, Integer> tombstones = new HashMap<>();
+
+        scan(segment, 0, false, (type, key, chunkNumber, dataOffset, dataLength, recordOffset, recordLength) -> {
+            if (type == TYPE_PUT) {
+                ChunkLocation location = index.get(key);
+                if (location == null || location.segmentId != segment.id || location.offset != dataOffset) {
+                    return;
+                }
+                // Copiar el registro vivo al segmento activo si nadie lo modificó mientras tanto
+                byte[] data = new byte[dataLength];
+                readFully(segment.channel, ByteBuffer.wrap(data), dataOffset);
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                int crc = checksum(keyBytes, data);
+                synchronized (writeLock) {
+                    if (location.equals(index.get(key))) {
+                        ChunkLocation moved = append(TYPE_PUT, keyBytes, chunkNumber, data, crc);
+                        replaceLocation(key, moved);
+                    }
+                }
+            } else if (type == TYPE_DELETE) {
+                // Las tumbas antiguas no guardan el segmento anulado: pudo ser cualquiera anterior
+                tombstones.put(key, chunkNumber > 0 ? chunkNumber : segment.id - 1);
+            }
+        });
+
+        // La tumba solo debe sobrevivir si otro segmento aún guarda un PUT de la clave que anula
+        for (Map.Entry<String, Integer> tombstone : shadowedPuts(segment, tombstones).entrySet()) {
+            byte[] keyBytes = tombstone.getKey().getBytes(StandardCharsets.UTF_8);
+            synchronized (writeLock) {
+                if (!index.contains(tombstone.getKey())) {
+                    append(TYPE_DELETE, keyBytes, tombstone.getValue(), new byte[0],
+                            checksum(keyBytes, new byte[0]));
+                }
+            }
+        }
+
+        segments.remove(segment.id);
+        maintenance.schedule(() -> {
+            segment.close();
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.warning("Could not delete compacted segment " + segment.path + ": " + e.getMessage());
+            }
+        }, RETIRED_SEGMENT_GRACE_SECONDS, TimeUnit.SECONDS);
+
+        logger.info("Compacted segment " + segment.id + " (" + before + " bytes)");
+    }
+
+    // Tumbas cuya clave aún tiene un PUT en otro segmento; devuelve clave -> segmento más reciente con él.
+    // Las copias de una clave solo pueden estar en el segmento de su último PUT o en anteriores,
+    // así que basta con leer las cabeceras de esos segmentos
+    private Map<String, Integer> shadowedPuts(Segment compacting, Map<String, Integer> tombstones)
+            throws IOException {
+        Map<String, Integer> shadowed = new HashMap<>();
+        if (tombstones.isEmpty()) {
+            return shadowed;
+        }
+        int newest = 0;
+        for (int segmentId : tombstones.values()) {
+            newest = Math.max(newest, segmentId);
+        }
+
+        for (Segment older : new ArrayList<>(segments.headMap(newest, true).values())) {
+            if (older == compacting) {
+                continue;
+            }
+            scan(older, 0, false, (type, key, chunkNumber, dataOffset, dataLength, recordOffset, recordLength) -> {
+                Integer limit = tombstones.get(key);
+                if (type == TYPE_PUT && limit != null && older.id <= limit) {
+                    shadowed.merge(key, older.id, Math::max);
+                }
+            });
+        }
+        return shadowed;
+    }
+
+    // Forzar a disco los segmentos con escrituras posteriores al último force()
+    private void forceSegments() throws IOException {
+        for (Segment segment : segments.values()) {
+            long position = segment.writePosition;
+            if (position > segment.forcedPosition) {
+                try {
+                    segment.channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // Segmento retirado por compactación: sus registros vivos ya se copiaron
+                    continue;
+                }
+                segment.forcedPosition = position;
+            }
+        }
+    }
+
+    // Debe llamarse con writeLock tomado
+    private ChunkLocation append(byte type, byte[] keyBytes, int chunkNumber, byte[] data, int crc)
+            throws IOException {
+        int recordLength = HEADER_SIZE + keyBytes.length + data.length;
+        if (active.writePosition + recordLength > active.capacity) {
+            active = createSegment(active.id + 1, Math.max(segmentSize, recordLength));
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length);
+        header.putInt(RECORD_MAGIC);
+        header.put(type);
+        header.putShort((short) keyBytes.length);
+        header.putInt(chunkNumber);
+        header.putInt(data.length);
+        header.putInt(crc);
+        header.put(keyBytes);
+        header.flip();
+
+        long recordOffset = active.writePosition;
+        ByteBuffer[] buffers = { header, ByteBuffer.wrap(data) };
+        active.channel.position(recordOffset);
+        long remaining = recordLength;
+        while (remaining > 0) {
+            remaining -= active.channel.write(buffers);
+        }
+        active.writePosition += recordLength;
+
+        long dataOffset = recordOffset + HEADER_SIZE + keyBytes.length;
+        return new ChunkLocation(active.id, dataOffset, data.length, recordLength);
+    }
+
+    // Debe llamarse con writeLock tomado
+    private void replaceLocation(String key, ChunkLocation location) {
+        Segment segment = segments.get(location.segmentId);
+        if (segment != null) {
+            segment.liveBytes.addAndGet(location.recordLength);
+        }
+        ChunkLocation previous = index.put(key, location);
+        if (previous != null) {
+            markDead(previous);
+        }
+        mutations.incrementAndGet();
+    }
+
+    private void markDead(ChunkLocation location) {
+        Segment segment = segments.get(location.segmentId);
+        if (segment != null) {
+            segment.liveBytes.addAndGet(-location.recordLength);
+        }
+    }
+
+    // Aplica un registro leído al arrancar
+    private void replay(Segment segment, byte type, String key, long dataOffset, int dataLength,
+            int recordLength) {
+        mutations.incrementAndGet();
+        if (type == TYPE_PUT) {
+            ChunkLocation location = new ChunkLocation(segment.id, dataOffset, dataLength, recordLength);
+            segment.liveBytes.addAndGet(recordLength);
+            ChunkLocation previous = index.put(key, location);
+            if (previous != null) {
+                markDead(previous);
+            }
+        } else {
+            ChunkLocation previous = index.remove(key);
+            if (previous != null) {
+                markDead(previous);
+            }
+        }
+    }
+
+    // Recorre los registros de un segmento y devuelve la posición tras el último válido
+    private long scan(Segment segment, long start, boolean verifyChecksums, RecordVisitor visitor)
+            throws IOException {
+        long position = start;
+        long size = segment.channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(segment.channel, header, position);
+            header.flip();
+
+            if (header.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            byte type = header.get();
+            int keyLength = header.getShort() & 0xFFFF;
+            int chunkNumber = header.getInt();
+            int dataLength = header.getInt();
+            int crc = header.getInt();
+
+            long recordLength = (long) HEADER_SIZE + keyLength + dataLength;
+            if ((type != TYPE_PUT && type != TYPE_DELETE) || dataLength < 0 || position + recordLength > size) {
+                break;
+            }
+
+            ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+            readFully(segment.channel, keyBuffer, position + HEADER_SIZE);
+            long dataOffset = position + HEADER_SIZE + keyLength;
+
+            if (verifyChecksums) {
+                ByteBuffer data = ByteBuffer.allocate(dataLength);
+                readFully(segment.channel, data, dataOffset);
+                if (checksum(keyBuffer.array(), data.array()) != crc) {
+                    logger.warning("Torn record at offset " + position + " of segment " + segment.id
+                            + ", truncating");
+                    break;
+                }
+            }
+
+            String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+            visitor.visit(type, key, chunkNumber, dataOffset, dataLength, position, (int) recordLength);
+            position += recordLength;
+        }
+
+        return position;
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        return createSegment(id, segmentSize);
+    }
+
+    private Segment createSegment(int id, long capacity) throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        // Preasignar el segmento completo para evitar crecer el archivo en cada escritura
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(capacity);
+        }
+        Segment segment = Segment.open(id, path);
+        segments.put(id, segment);
+        logger.info("Created segment " + path.getFileName());
+        return segment;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static int checksum(byte[] key, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static boolean isSegmentFile(String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int parseSegmentId(String name) {
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(byte type, String key, int chunkNumber, long dataOffset, int dataLength,
+                long recordOffset, int recordLength) throws IOException;
+    }
+
+    // Ubicación de los datos de un chunk dentro de un segmento
+    public static final class ChunkLocation {
+        final int segmentId;
+        final long offset;
+        final int length;
+        final int recordLength;
+
+        ChunkLocation(int segmentId, long offset, int length, int recordLength) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.recordLength = recordLength;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ChunkLocation)) {
+                return false;
+            }
+            ChunkLocation location = (ChunkLocation) other;
+            return segmentId == location.segmentId && offset == location.offset && length == location.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(ChunkIndex.pack(segmentId, offset)) * 31 + length;
+        }
+    }
+
+    // Archivo de segmento abierto
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final long capacity;
+        final AtomicLong liveBytes;
+        volatile long writePosition;
+        volatile long forcedPosition;
+        // Mapeo de solo lectura del segmento completo, creado en la primera lectura
+        private volatile MappedByteBuffer mapped;
+
+        private Segment(int id, Path path, FileChannel channel, long capacity) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.liveBytes = new AtomicLong();
+        }
+
+        static Segment open(int id, Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, path, channel, channel.size());
+        }
+
+        // Las escrituras por el canal son visibles en el mapeo porque comparten la caché de páginas
+        MappedByteBuffer mapped() throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null) {
+                synchronized (this) {
+                    if (mapped == null) {
+                        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity);
+                    }
+                    current = mapped;
+                }
+            }
+            return current;
+        }
+
+        void close() {
+            // El mapeo se libera cuando deja de estar referenciado; las vistas entregadas siguen siendo válidas
+            mapped = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Error closing segment " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package servidor.aplicacion.rmi.nodes;
 
+import servidor.aplicacion.dto.ChunkTransferDTO;
 import servidor.aplicacion.interfaces.NodeInterface;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class StorageNode extends UnicastRemoteObject implements NodeInterface {
     private static final Logger logger = Logger.getLogger(StorageNode.class.getName());
@@ -20,57 +27,51 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
     private final String nodeName;
     private final String storagePath;
     private String status;
-    private final ConcurrentHashMap<String, String> fileIndex;
-    private long availableSpace;
-    private long usedSpace;
+    private final SegmentStore segmentStore;
+    private final CapacityTracker capacity;
+    private final ChainReplicator chainReplicator;
+    // Puerto del plano de datos binario (-1 si no está disponible)
+    private volatile int dataPort = -1;
 
     public StorageNode(String nodeName, String storagePath) throws RemoteException {
         super();
         this.nodeName = nodeName;
         this.storagePath = storagePath;
         this.status = "ACTIVE";
-        this.fileIndex = new ConcurrentHashMap<>();
-        this.availableSpace = 0L;
-        this.usedSpace = 0L;
+        this.segmentStore = new SegmentStore(Paths.get(storagePath, "segments"));
+        this.capacity = new CapacityTracker(new File(storagePath));
+        this.chainReplicator = new ChainReplicator();
 
         // Crear directorio de almacenamiento para este nodo
         createStorageDirectory();
 
-        // Calcular espacio disponible en disco para el nodo
-        calculateDiskSpace();
+        // Calcular espacio disponible en disco y reconciliarlo periódicamente
+        capacity.start();
 
-        // Cargar archivos existentes en el índice del nodo
-        loadFileIndex();
+        // Abrir los segmentos y reconstruir el índice de chunks del nodo
+        openSegmentStore();
     }
 
     @Override
     public boolean storeFileChunk(String fileId, int chunkNumber, byte[] data) throws RemoteException {
-        try {
-            String fileName = generateChunkFileName(fileId, chunkNumber);
-            Path filePath = Paths.get(storagePath, fileName);
-
-            // Verificar si hay espacio suficiente en el nodo
-            if (availableSpace < data.length) {
-                logger.warning("Insufficient space to store chunk. Available: " + availableSpace + ", Required: "
-                        + data.length);
-                return false;
-            }
-
-            // Escribir chunk al almacenamiento del nodo
-            Files.write(filePath, data);
+        // Reservar el espacio de forma atómica antes de escribir
+        if (!capacity.reserve(data.length)) {
+            logger.warning("Insufficient space to store chunk. Available: " + capacity.getAvailable()
+                    + ", Required: " + data.length);
+            return false;
+        }
 
-            // Actualizar índice de archivos del nodo
+        try {
+            // Añadir el chunk al segmento activo (actualiza el índice del nodo)
             String key = fileId + "_" + chunkNumber;
-            fileIndex.put(key, filePath.toString());
-
-            // Actualizar estadísticas de uso de espacio del nodo
-            usedSpace += data.length;
-            availableSpace -= data.length;
+            segmentStore.put(key, chunkNumber, data);
+            capacity.commit(data.length);
 
             logger.info("Stored chunk " + chunkNumber + " of file " + fileId + " (" + data.length + " bytes)");
             return true;
 
         } catch (IOException e) {
+            capacity.release(data.length);
             logger.severe("Error storing file chunk: " + e.getMessage());
             return false;
         }
@@ -80,21 +81,13 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
     public byte[] retrieveFileChunk(String fileId, int chunkNumber) throws RemoteException {
         try {
             String key = fileId + "_" + chunkNumber;
-            String filePath = fileIndex.get(key);
+            byte[] data = segmentStore.get(key);
 
-            if (filePath == null) {
+            if (data == null) {
                 logger.warning("Chunk not found: " + key);
                 return null;
             }
 
-            Path path = Paths.get(filePath);
-            if (!Files.exists(path)) {
-                logger.warning("File not found on disk: " + filePath);
-                fileIndex.remove(key); // Limpiar índice de archivos del nodo
-                return null;
-            }
-
-            byte[] data = Files.readAllBytes(path);
             logger.info("Retrieved chunk " + chunkNumber + " of file " + fileId + " (" + data.length + " bytes)");
             return data;
 
@@ -104,30 +97,27 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
         }
     }
 
+    // Vista de solo lectura del chunk sobre el segmento mapeado, sin copiarlo al heap; null si no existe
+    public ByteBuffer readChunk(String fileId, int chunkNumber) throws IOException {
+        return segmentStore.view(fileId + "_" + chunkNumber);
+    }
+
+    // Enviar el chunk directamente desde el segmento a un canal; -1 si no existe
+    public long transferChunk(String fileId, int chunkNumber, WritableByteChannel target) throws IOException {
+        return segmentStore.transferChunk(fileId + "_" + chunkNumber, target);
+    }
+
     @Override
     public boolean deleteFileChunk(String fileId, int chunkNumber) throws RemoteException {
         try {
             String key = fileId + "_" + chunkNumber;
-            String filePath = fileIndex.get(key);
-
-            if (filePath == null) {
+            // Escribir la tumba y remover del índice; el espacio se recupera al compactar
+            // y el contador de capacidad lo refleja en la siguiente reconciliación
+            if (!segmentStore.delete(key)) {
                 logger.warning("Chunk not found for deletion: " + key);
                 return false;
             }
 
-            Path path = Paths.get(filePath);
-            if (Files.exists(path)) {
-                long fileSize = Files.size(path);
-                Files.delete(path);
-
-                // Actualizar estadísticas de espacio del nodo
-                usedSpace -= fileSize;
-                availableSpace += fileSize;
-            }
-
-            // Remover del índice
-            fileIndex.remove(key);
-
             logger.info("Deleted chunk " + chunkNumber + " of file " + fileId);
             return true;
 
@@ -139,16 +129,107 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
 
     @Override
     public List<String> listStoredFiles() throws RemoteException {
-        List<String> fileIds = new ArrayList<>();
+        // El índice mantiene un resumen por archivo: no hace falta recorrer todas las claves
+        return segmentStore.fileIds();
+    }
+
+    @Override
+    public boolean[] storeFileChunks(List<ChunkTransferDTO> chunks) throws RemoteException {
+        boolean[] stored = new boolean[chunks.size()];
+        long lastSequence = -1;
+        long reservedBytes = 0;
 
-        for (String key : fileIndex.keySet()) {
-            String fileId = key.split("_")[0]; // Extraer ID de archivo del identificador del chunk
-            if (!fileIds.contains(fileId)) {
-                fileIds.add(fileId);
+        try {
+            // Añadir todos los chunks y esperar un único force() para el lote
+            for (int i = 0; i < chunks.size(); i++) {
+                ChunkTransferDTO chunk = chunks.get(i);
+                byte[] data = chunk.getData();
+                if (data == null || !capacity.reserve(data.length)) {
+                    logger.warning("Skipping chunk " + chunk.getChunkNumber() + " of file " + chunk.getFileId()
+                            + ": no data or insufficient space");
+                    continue;
+                }
+                reservedBytes += data.length;
+
+                try {
+                    lastSequence = segmentStore.write(chunk.getFileId() + "_" + chunk.getChunkNumber(),
+                            chunk.getChunkNumber(), data);
+                    stored[i] = true;
+                } catch (IOException e) {
+                    logger.severe("Error storing file chunk: " + e.getMessage());
+                }
+            }
+
+            if (lastSequence >= 0) {
+                segmentStore.awaitDurable(lastSequence);
             }
+        } catch (IOException e) {
+            logger.severe("Error syncing chunk batch: " + e.getMessage());
+            Arrays.fill(stored, false);
         }
 
-        return fileIds;
+        // Confirmar el espacio de los chunks guardados y liberar el resto
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] data = chunks.get(i).getData();
+            if (data != null && stored[i]) {
+                capacity.commit(data.length);
+                reservedBytes -= data.length;
+            }
+        }
+        if (reservedBytes > 0) {
+            capacity.release(reservedBytes);
+        }
+
+        logger.info("Stored batch of " + chunks.size() + " chunks");
+        return stored;
+    }
+
+    @Override
+    public List<byte[]> retrieveFileChunks(List<ChunkTransferDTO> chunks) throws RemoteException {
+        List<byte[]> result = new ArrayList<>(chunks.size());
+        for (ChunkTransferDTO chunk : chunks) {
+            try {
+                result.add(segmentStore.get(chunk.getFileId() + "_" + chunk.getChunkNumber()));
+            } catch (IOException e) {
+                logger.severe("Error retrieving file chunk: " + e.getMessage());
+                result.add(null);
+            }
+        }
+        logger.info("Retrieved batch of " + chunks.size() + " chunks");
+        return result;
+    }
+
+    @Override
+    public int deleteFileChunks(String fileId) throws RemoteException {
+        try {
+            // Enumerar los chunks del archivo a partir del resumen por archivo del índice
+            List<String> keys = segmentStore.keysOfFile(Long.parseLong(fileId));
+            int deleted = segmentStore.deleteAll(keys);
+            logger.info("Deleted " + deleted + " chunks of file " + fileId);
+            return deleted;
+
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid file id for batch deletion: " + fileId);
+            return 0;
+        } catch (IOException e) {
+            logger.severe("Error deleting chunks of file " + fileId + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean[] hasFiles(List<ChunkTransferDTO> chunks) throws RemoteException {
+        boolean[] present = new boolean[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkTransferDTO chunk = chunks.get(i);
+            present[i] = segmentStore.contains(chunk.getFileId() + "_" + chunk.getChunkNumber());
+        }
+        return present;
+    }
+
+    @Override
+    public int getDataPort() throws RemoteException {
+        return dataPort;
     }
 
     @Override
@@ -158,13 +239,12 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
 
     @Override
     public long getAvailableSpace() throws RemoteException {
-        calculateDiskSpace(); // Actualizar espacio en tiempo real
-        return availableSpace;
+        return capacity.getAvailable();
     }
 
     @Override
     public long getUsedSpace() throws RemoteException {
-        return usedSpace;
+        return capacity.getUsed();
     }
 
     @Override
@@ -175,8 +255,7 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
     @Override
     public void updateNodeInfo(String status, long availableSpace, long usedSpace) throws RemoteException {
         this.status = status;
-        this.availableSpace = availableSpace;
-        this.usedSpace = usedSpace;
+        capacity.override(availableSpace, usedSpace);
         logger.info(
                 "Node info updated - Status: " + status + ", Available: " + availableSpace + ", Used: " + usedSpace);
     }
@@ -196,7 +275,7 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
             }
 
             // Verificar espacio mínimo requerido en el nodo (100MB)
-            return availableSpace > 100 * 1024 * 1024;
+            return capacity.getAvailable() > 100 * 1024 * 1024;
 
         } catch (Exception e) {
             logger.warning("Health check failed: " + e.getMessage());
@@ -206,39 +285,56 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
 
     @Override
     public List<String> getFileList() throws RemoteException {
-        return new ArrayList<>(fileIndex.keySet());
+        return segmentStore.keys();
     }
 
     @Override
     public boolean hasFile(String fileId, int chunkNumber) throws RemoteException {
         String key = fileId + "_" + chunkNumber;
-        return fileIndex.containsKey(key);
+        return segmentStore.contains(key);
     }
 
     @Override
     public boolean replicateChunk(String fileId, int chunkNumber, byte[] data, String targetNodeUrl)
             throws RemoteException {
-        try {
-            // Conectar con nodo destino para replicación
-            NodeInterface targetNode = (NodeInterface) Naming.lookup(targetNodeUrl);
-
-            // Enviar chunk al nodo destino
-            boolean success = targetNode.storeFileChunk(fileId, chunkNumber, data);
-
-            if (success) {
-                logger.info(
-                        "Successfully replicated chunk " + chunkNumber + " of file " + fileId + " to " + targetNodeUrl);
-            } else {
-                logger.warning(
-                        "Failed to replicate chunk " + chunkNumber + " of file " + fileId + " to " + targetNodeUrl);
-            }
+        // Reenviar por el stub o la conexión de datos cacheados del nodo destino
+        boolean success = awaitChain(chainReplicator.forward(fileId, chunkNumber, data, List.of(targetNodeUrl)), 1)[0];
 
-            return success;
+        if (success) {
+            logger.info("Successfully replicated chunk " + chunkNumber + " of file " + fileId + " to " + targetNodeUrl);
+        } else {
+            logger.warning("Failed to replicate chunk " + chunkNumber + " of file " + fileId + " to " + targetNodeUrl);
+        }
+        return success;
+    }
 
-        } catch (Exception e) {
+    @Override
+    public boolean[] storeFileChunkChain(String fileId, int chunkNumber, byte[] data, List<String> downstreamUrls)
+            throws RemoteException {
+        // Empezar a reenviar antes de escribir para solapar la red con la escritura local
+        CompletableFuture<boolean[]> forwarded = downstreamUrls.isEmpty()
+                ? CompletableFuture.completedFuture(new boolean[0])
+                : chainReplicator.forward(fileId, chunkNumber, data, downstreamUrls);
+
+        boolean[] acks = new boolean[downstreamUrls.size() + 1];
+        acks[0] = storeFileChunk(fileId, chunkNumber, data);
+
+        // La confirmación llega desde la cola de la cadena
+        boolean[] downstreamAcks = awaitChain(forwarded, downstreamUrls.size());
+        System.arraycopy(downstreamAcks, 0, acks, 1, Math.min(downstreamAcks.length, downstreamUrls.size()));
+        return acks;
+    }
+
+    // Esperar las confirmaciones del resto de la cadena; ninguna si falla o vence el plazo
+    private boolean[] awaitChain(CompletableFuture<boolean[]> forwarded, int length) {
+        try {
+            return forwarded.get(ChunkDataClient.DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
             logger.severe("Error replicating chunk: " + e.getMessage());
-            return false;
         }
+        return new boolean[length];
     }
 
     // Métodos auxiliares privados
@@ -255,49 +351,50 @@ public class StorageNode extends UnicastRemoteObject implements NodeInterface {
         }
     }
 
-    private void calculateDiskSpace() {
+    private void openSegmentStore() {
         try {
-            Path storageDirPath = Paths.get(storagePath);
-            long totalSpace = storageDirPath.toFile().getTotalSpace();
-            long freeSpace = storageDirPath.toFile().getFreeSpace();
-
-            this.availableSpace = freeSpace;
-            this.usedSpace = totalSpace - freeSpace;
-
-        } catch (Exception e) {
-            logger.warning("Failed to calculate disk space: " + e.getMessage());
+            segmentStore.open();
+            migrateLegacyChunkFiles();
+        } catch (IOException e) {
+            logger.severe("Failed to open segment store: " + e.getMessage());
+            throw new RuntimeException("Cannot open segment store", e);
         }
     }
 
-    private void loadFileIndex() {
-        try {
-            Path storageDirPath = Paths.get(storagePath);
-            if (!Files.exists(storageDirPath)) {
-                return;
+    // Importar al almacén de segmentos los chunks guardados como <fileId>_chunk_<n>.dat
+    private void migrateLegacyChunkFiles() throws IOException {
+        Path storageDirPath = Paths.get(storagePath);
+        List<Path> legacyFiles;
+        try (Stream<Path> files = Files.list(storageDirPath)) {
+            legacyFiles = files.filter(Files::isRegularFile)
+                    .filter(filePath -> filePath.getFileName().toString().matches(".*_chunk_\\d+\\.dat"))
+                    .toList();
+        }
+
+        for (Path filePath : legacyFiles) {
+            String[] parts = filePath.getFileName().toString().replace(".dat", "").split("_chunk_");
+            if (parts.length == 2) {
+                String fileId = parts[0];
+                int chunkNumber = Integer.parseInt(parts[1]);
+                segmentStore.put(fileId + "_" + chunkNumber, chunkNumber, Files.readAllBytes(filePath));
+                Files.delete(filePath);
             }
+        }
 
-            Files.list(storageDirPath)
-                    .filter(Files::isRegularFile)
-                    .forEach(filePath -> {
-                        String fileName = filePath.getFileName().toString();
-                        if (fileName.matches(".*_chunk_\\d+\\.dat")) {
-                            // Extraer fileId y chunkNumber del nombre del archivo
-                            String[] parts = fileName.replace(".dat", "").split("_chunk_");
-                            if (parts.length == 2) {
-                                String fileId = parts[0];
-                                String chunkNumber = parts[1];
-                                String key = fileId + "_" + chunkNumber;
-                                fileIndex.put(key, filePath.toString());
-                            }
-                        }
-                    });
-        } catch (IOException e) {
-            logger.warning("Error al cargar el índice de archivos: " + e.getMessage());
+        if (!legacyFiles.isEmpty()) {
+            logger.info("Migrated " + legacyFiles.size() + " legacy chunk files into segments");
         }
     }
 
-    private String generateChunkFileName(String fileId, int chunkNumber) {
-        return fileId + "_chunk_" + chunkNumber + ".dat";
+    // Cerrar las conexiones de replicación y el almacén de segmentos del nodo
+    public void close() {
+        chainReplicator.close();
+        capacity.close();
+        segmentStore.close();
+    }
+
+    public void setDataPort(int dataPort) {
+        this.dataPort = dataPort;
     }
 
     // Método para obtener el nombre del nodo
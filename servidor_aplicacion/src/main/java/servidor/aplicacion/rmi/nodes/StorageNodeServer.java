@@ -12,6 +12,7 @@ public class StorageNodeServer {
     private final String storagePath;
     private Registry registry;
     private StorageNode storageNode;
+    private ChunkDataServer dataServer;
 
     public StorageNodeServer(String nodeName, int port, String storagePath) {
         this.nodeName = nodeName;
@@ -27,6 +28,8 @@ public class StorageNodeServer {
             storageNode = new StorageNode(nodeName, storagePath);
             // Registrar el nodo en el registro RMI
             registry.bind("StorageNode", storageNode);
+            // Levantar el plano de datos binario junto a la interfaz RMI de control
+            startDataServer();
         } catch (Exception e) {
             logger.severe("Failed to start Storage Node '" + nodeName + "': " + e.getMessage());
             e.printStackTrace();
@@ -38,6 +41,10 @@ public class StorageNodeServer {
         try {
             if (registry != null && storageNode != null) {
                 registry.unbind("StorageNode");
+                if (dataServer != null) {
+                    dataServer.stop();
+                }
+                storageNode.close();
                 logger.info("Storage Node '" + nodeName + "' stopped");
             }
         } catch (Exception e) {
@@ -45,6 +52,23 @@ public class StorageNodeServer {
         }
     }
 
+    // El puerto de datos es el puerto RMI más -Dstorage.data.portOffset (0 lo desactiva)
+    private void startDataServer() {
+        int offset = Integer.getInteger("storage.data.portOffset", ChunkDataProtocol.DEFAULT_PORT_OFFSET);
+        if (offset <= 0) {
+            return;
+        }
+        try {
+            dataServer = new ChunkDataServer(storageNode, port + offset);
+            dataServer.start();
+            storageNode.setDataPort(dataServer.getPort());
+        } catch (Exception e) {
+            // Sin plano de datos los clientes siguen usando RMI
+            logger.warning("Chunk data server for '" + nodeName + "' not started: " + e.getMessage());
+            dataServer = null;
+        }
+    }
+
     public static void main(String[] args) {
         if (args.length < 3) {
             System.err.println("Usage: java StorageNodeServer <nodeName> <port> <storagePath> [bindIP]");
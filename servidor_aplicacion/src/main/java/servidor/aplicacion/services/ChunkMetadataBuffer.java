@@ -0,0 +1,81 @@
+package servidor.aplicacion.services;
+
+import servidor.aplicacion.dao.FileChunkDAO;
+import servidor.aplicacion.model.FileChunk;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Acumula las confirmaciones de réplicas de una subida y las persiste en
+ * lotes con FileChunkDAO.saveAll, en lugar de un INSERT por réplica.
+ * Un fallo al persistir un lote se conserva y se relanza en flush(),
+ * para no confundirlo con un fallo del nodo que almacenó el chunk.
+ */
+public class ChunkMetadataBuffer {
+    private static final Logger logger = Logger.getLogger(ChunkMetadataBuffer.class.getName());
+
+    private final FileChunkDAO fileChunkDAO;
+    private final int batchSize;
+    private final List<FileChunk> pending;
+    private SQLException failure;
+
+    public ChunkMetadataBuffer(FileChunkDAO fileChunkDAO, int batchSize) {
+        this.fileChunkDAO = fileChunkDAO;
+        this.batchSize = Math.max(1, batchSize);
+        this.pending = new ArrayList<>();
+    }
+
+    // Registrar una réplica confirmada; persiste el lote cuando se llena
+    public void add(FileChunk chunk) {
+        List<FileChunk> batch = null;
+        synchronized (this) {
+            pending.add(chunk);
+            if (pending.size() >= batchSize) {
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+        }
+
+        if (batch != null) {
+            persist(batch);
+        }
+    }
+
+    // Persistir las réplicas pendientes y relanzar cualquier fallo previo
+    public void flush() throws SQLException {
+        List<FileChunk> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        if (!batch.isEmpty()) {
+            persist(batch);
+        }
+
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void persist(List<FileChunk> batch) {
+        try {
+            fileChunkDAO.saveAll(batch);
+            logger.info("Registrados " + batch.size() + " chunks en BD en un lote");
+        } catch (SQLException e) {
+            logger.severe("Error registrando lote de " + batch.size() + " chunks en BD: " + e.getMessage());
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+    }
+}
@@ -1,46 +1,148 @@
 package servidor.aplicacion.services;
 
+import servidor.aplicacion.dao.ContentChunkDAO;
 import servidor.aplicacion.dao.FileDAO;
 import servidor.aplicacion.dao.FileChunkDAO;
 import servidor.aplicacion.manager.NodeManager;
+import servidor.aplicacion.manager.NodeStatusListener;
+import servidor.aplicacion.model.ChunkReplica;
+import servidor.aplicacion.model.ContentChunk;
+import servidor.aplicacion.model.ContentLocation;
 import servidor.aplicacion.model.File;
 import servidor.aplicacion.model.FileChunk;
 import servidor.aplicacion.model.Node;
-import servidor.aplicacion.rmi.nodes.RMIStorageNodeClient;
+import servidor.aplicacion.model.RedundancyPolicy;
+import servidor.aplicacion.placement.ConsistentHashPlacementStrategy;
+import servidor.aplicacion.placement.LoadAwarePlacementStrategy;
+import servidor.aplicacion.placement.PlacementStrategy;
+import servidor.aplicacion.rmi.nodes.NodeClientPool;
 import servidor.aplicacion.interfaces.FileInterface;
-
+import servidor.aplicacion.util.ChunkCodec;
+import servidor.aplicacion.util.ChunkDigest;
+import servidor.aplicacion.util.ContentDefinedChunker;
+import servidor.aplicacion.util.ReedSolomon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.util.logging.Logger;
-import java.security.MessageDigest;
+import java.sql.SQLException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Servicio de archivos distribuido que implementa:
- * - Fragmentación de archivos en chunks
+ * - Fragmentación de archivos en chunks de tamaño fijo o definidos por su contenido
  * - Distribución a múltiples nodos
- * - Replicación para redundancia
+ * - Replicación para redundancia, en abanico desde el servidor o en cadena entre nodos
+ * - Erasure coding Reed-Solomon k+m como alternativa a la replicación, por archivo o directorio
+ * - Deduplicación por contenido: los chunks se guardan bajo su hash con contador de referencias
+ * - Compresión opcional por chunk (LZ4 o deflate), omitida si una muestra indica que no compensa
+ * - Verificación de integridad con digests binarios (CRC32C por defecto) de los bytes guardados
+ * - Lecturas por la réplica más rápida con lectura de cobertura a otra si tarda más de lo habitual
+ * - Descargas repartidas entre las réplicas, con capacidad compartida por igual entre descargas simultáneas
  * - Recuperación automática de fallos
  */
 public class DistributedFileService implements FileInterface {
 
     private static final Logger logger = Logger.getLogger(DistributedFileService.class.getName());
 
+    // Cómo llegan las réplicas de un chunk a sus nodos
+    public enum ReplicationMode {
+        // El servidor envía el chunk a cada réplica
+        FAN_OUT,
+        // El servidor lo envía a la cabeza, que lo propaga a la siguiente réplica
+        CHAIN
+    }
+
+    // Cómo se dividen los archivos en chunks
+    public enum ChunkingMode {
+        // Cortes cada CHUNK_SIZE bytes
+        FIXED,
+        // Cortes según un hash rodante del contenido; una edición solo cambia los chunks que toca
+        CONTENT_DEFINED
+    }
+
     // Configuración de distribución
     private static final int CHUNK_SIZE = 1024 * 1024;
     private static final int REPLICATION_FACTOR = 2;
+    private static final int MAX_IN_FLIGHT_CHUNKS = 4;
+    private static final double MIN_EXPECTED_LATENCY_MILLIS = 1.0;
+    private static final int DEFAULT_METADATA_BATCH_SIZE = 64;
 
     private final FileDAO fileDAO;
     private final FileChunkDAO fileChunkDAO;
+    private final ContentChunkDAO contentChunkDAO;
     private final NodeManager nodeManager;
     private final ExecutorService executorService;
-
-    public DistributedFileService(FileDAO fileDAO, FileChunkDAO fileChunkDAO, NodeManager nodeManager) {
+    private final NodeClientPool nodeClientPool;
+    private volatile int metadataBatchSize = DEFAULT_METADATA_BATCH_SIZE;
+    private volatile PlacementStrategy placementStrategy;
+    private volatile ReplicationMode replicationMode;
+    private volatile RedundancyPolicy defaultRedundancy;
+    private volatile boolean deduplicationEnabled;
+    private volatile ChunkingMode chunkingMode;
+    private volatile ChunkCodec compressionCodec;
+    private volatile ChunkDigest.Algorithm integrityAlgorithm;
+    private final ContentDefinedChunker contentDefinedChunker;
+    private final ReadLatencyTracker readLatencyTracker;
+    private final DownloadScheduler downloadScheduler;
+    private volatile boolean hedgedReadsEnabled;
+
+    public DistributedFileService(FileDAO fileDAO, FileChunkDAO fileChunkDAO, ContentChunkDAO contentChunkDAO,
+            NodeManager nodeManager) {
         this.fileDAO = fileDAO;
         this.fileChunkDAO = fileChunkDAO;
+        this.contentChunkDAO = contentChunkDAO;
         this.nodeManager = nodeManager;
         this.executorService = Executors.newFixedThreadPool(10);
+        this.nodeClientPool = new NodeClientPool();
+        this.placementStrategy = new LoadAwarePlacementStrategy(new ConsistentHashPlacementStrategy(), nodeClientPool);
+        this.replicationMode = "fanout".equalsIgnoreCase(System.getProperty("storage.replication.mode"))
+                ? ReplicationMode.FAN_OUT
+                : ReplicationMode.CHAIN;
+        String redundancy = System.getProperty("storage.redundancy");
+        this.defaultRedundancy = redundancy != null
+                ? RedundancyPolicy.parse(redundancy)
+                : RedundancyPolicy.replication(REPLICATION_FACTOR);
+        this.deduplicationEnabled = Boolean.parseBoolean(System.getProperty("storage.dedup", "true"));
+        this.chunkingMode = "cdc".equalsIgnoreCase(System.getProperty("storage.chunking"))
+                ? ChunkingMode.CONTENT_DEFINED
+                : ChunkingMode.FIXED;
+        this.contentDefinedChunker = new ContentDefinedChunker();
+        this.compressionCodec = ChunkCodec.parse(System.getProperty("storage.compression"));
+        this.integrityAlgorithm = ChunkDigest.Algorithm.parse(System.getProperty("storage.integrity"));
+        this.readLatencyTracker = new ReadLatencyTracker(Double.parseDouble(
+                System.getProperty("storage.read.hedgePercentile", String.valueOf(ReadLatencyTracker.DEFAULT_PERCENTILE))));
+        this.hedgedReadsEnabled = Boolean.parseBoolean(System.getProperty("storage.read.hedging", "true"));
+        this.downloadScheduler = new DownloadScheduler(Integer.getInteger("storage.download.maxInFlight",
+                DownloadScheduler.DEFAULT_MAX_IN_FLIGHT));
+
+        // Descartar el stub cacheado de un nodo en cuanto deja de estar online
+        this.nodeManager.addListener(new NodeStatusListener() {
+            @Override
+            public void onNodeOnline(Node node) {
+            }
+
+            @Override
+            public void onNodeOffline(Node node) {
+                nodeClientPool.invalidate(node.getId());
+            }
+        });
     }
 
     @Override
@@ -48,31 +150,128 @@ public class DistributedFileService implements FileInterface {
     logger.info("Iniciando upload distribuido para archivo: " + file.getName());
     logger.info("Tamaño de datos recibidos: " + (data != null ? data.length : "null"));
 
+        // El tamaño se conoce de antemano; el envío reutiliza el pipeline por streaming
+        file.setSize((long) data.length);
+        return uploadFile(file, new ByteArrayInputStream(data), userId);
+    }
+
+    /**
+     * Sube un archivo leyendo el canal de entrada chunk por chunk.
+     */
+    public File uploadFile(File file, ReadableByteChannel channel, long userId) throws Exception {
+        return uploadFile(file, Channels.newInputStream(channel), userId);
+    }
+
+    /**
+     * Sube un archivo leyendo el flujo chunk por chunk, sin materializarlo
+     * completo en memoria. Mientras un chunk se calcula y envía a los nodos
+     * se lee el siguiente; como máximo MAX_IN_FLIGHT_CHUNKS chunks están en
+     * memoria a la vez.
+     */
+    public File uploadFile(File file, InputStream input, long userId) throws Exception {
+        return uploadFile(file, input, userId, chunkingMode);
+    }
+
+    /**
+     * Igual que uploadFile(File, InputStream, long) pero eligiendo cómo se
+     * divide este archivo en chunks. CONTENT_DEFINED conviene para archivos
+     * grandes que se vuelven a subir editados: junto con la deduplicación,
+     * solo se transfieren y guardan los chunks de las zonas modificadas.
+     */
+    public File uploadFile(File file, InputStream input, long userId, ChunkingMode chunking) throws Exception {
+        logger.info("Iniciando upload distribuido por streaming para archivo: " + file.getName()
+                + " (fragmentación " + chunking + ")");
+
         // Verificar permisos de usuario
         if (file.getOwnerId() != userId) {
             throw new SecurityException("Usuario no es propietario del archivo");
         }
 
         // 2. Guardar metadatos del archivo en BD
-        file.setSize((long) data.length);
+        if (file.getSize() == null) {
+            file.setSize(0L);
+        }
+        RedundancyPolicy policy = resolveRedundancy(file);
+        file.setRedundancy(policy.toString());
         File savedFile = fileDAO.save(file);
 
-        // 3. Fragmentar archivo en chunks
-        List<byte[]> chunks = fragmentFile(data);
-        logger.info("Archivo fragmentado en " + chunks.size() + " chunks");
+        // 3. Leer, fragmentar y distribuir chunks a nodos; si falla, distributeChunks deshace lo
+        // guardado y aquí se elimina el archivo para no dejarlo a medias
+        long totalBytes;
+        try {
+            totalBytes = distributeChunks(savedFile.getId(), input, policy, chunking);
+        } catch (Exception e) {
+            try {
+                fileDAO.delete(savedFile.getId());
+            } catch (SQLException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            throw e;
+        }
 
-        // 4. Distribuir chunks a nodos
-        distributeChunks(savedFile.getId(), chunks);
+        // 4. Corregir el tamaño si no se conocía al iniciar la subida
+        if (savedFile.getSize() != totalBytes) {
+            savedFile.setSize(totalBytes);
+            fileDAO.update(savedFile);
+        }
 
-        logger.info("Upload distribuido completado para archivo: " + file.getName());
+        logger.info("Upload distribuido completado para archivo: " + file.getName() + " (" + totalBytes + " bytes)");
         return savedFile;
     }
 
     @Override
     public byte[] downloadFile(long fileId, long userId) throws Exception {
-        logger.info("Iniciando download distribuido para archivo ID: " + fileId);
+        File file = getDownloadableFile(fileId, userId);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(
+                (int) Math.min(file.getSize() != null ? file.getSize() : 0L, Integer.MAX_VALUE - 8));
+        downloadFile(file, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Descarga un archivo escribiéndolo en el canal a medida que llegan los chunks.
+     */
+    public long downloadFile(long fileId, long userId, WritableByteChannel channel) throws Exception {
+        return downloadFile(fileId, userId, Channels.newOutputStream(channel));
+    }
 
-        // 1. Obtener metadatos del archivo
+    /**
+     * Descarga un archivo escribiéndolo en orden en el flujo de salida a medida
+     * que llegan los chunks. Solo se mantienen en memoria los chunks que se
+     * están recuperando por adelantado (la ventana que asigna el planificador
+     * de descargas), de modo que el consumo de memoria no depende del tamaño
+     * del archivo. Devuelve los bytes escritos.
+     */
+    public long downloadFile(long fileId, long userId, OutputStream output) throws Exception {
+        return downloadFile(getDownloadableFile(fileId, userId), output);
+    }
+
+    private long downloadFile(File file, OutputStream output) throws Exception {
+        logger.info("Iniciando download distribuido para archivo ID: " + file.getId());
+
+        // 3. Obtener el plan de réplicas (chunk -> réplicas con su nodo) en una sola consulta
+        Map<Integer, List<ChunkReplica>> replicaPlan = fileChunkDAO.findReplicasByFileId(file.getId());
+        if (replicaPlan.isEmpty()) {
+            logger.warning("No se encontraron chunks para el archivo: " + file.getId());
+            return 0;
+        }
+
+        // 4. Recuperar chunks de nodos y escribirlos en orden
+        RedundancyPolicy policy = file.getRedundancy() != null
+                ? RedundancyPolicy.parse(file.getRedundancy())
+                : RedundancyPolicy.replication(REPLICATION_FACTOR);
+        ReedSolomon codec = policy.isErasure()
+                ? new ReedSolomon(policy.getDataShards(), policy.getParityShards())
+                : null;
+        long written = streamChunks(replicaPlan, codec, output);
+
+        logger.info("Download distribuido completado para archivo ID: " + file.getId() + " (" + written + " bytes)");
+        return written;
+    }
+
+    // Obtiene los metadatos del archivo verificando permisos de descarga
+    private File getDownloadableFile(long fileId, long userId) throws Exception {
         File file = fileDAO.findById(fileId);
         if (file == null) {
             throw new Exception("Archivo no encontrado");
@@ -87,18 +286,7 @@ public class DistributedFileService implements FileInterface {
             throw new Exception("No se puede descargar un directorio");
         }
 
-        // 3. Obtener información de chunks
-        List<FileChunk> chunks = fileChunkDAO.findByFileId(fileId);
-        if (chunks.isEmpty()) {
-            logger.warning("No se encontraron chunks para el archivo: " + fileId);
-            return new byte[0];
-        }
-
-        // 4. Recuperar chunks de nodos
-        byte[] reconstructedFile = reconstructFile(chunks);
-
-        logger.info("Download distribuido completado para archivo ID: " + fileId);
-        return reconstructedFile;
+        return file;
     }
 
     @Override
@@ -120,9 +308,10 @@ public class DistributedFileService implements FileInterface {
             throw new SecurityException("Usuario no tiene acceso al archivo");
         }
 
-        // 2. Eliminar chunks de nodos
-        List<FileChunk> chunks = fileChunkDAO.findByFileId(fileId);
-        deleteChunksFromNodes(chunks);
+        // 2. Eliminar chunks de nodos; los deduplicados solo si este archivo era su última referencia
+        Map<Integer, List<ChunkReplica>> replicaPlan = fileChunkDAO.findReplicasByFileId(fileId);
+        releaseContentChunks(fileId, replicaPlan);
+        deleteChunksFromNodes(fileId, nodesWithFileChunks(replicaPlan));
 
         // 3. Eliminar chunks de BD
         fileChunkDAO.deleteByFileId(fileId);
@@ -138,6 +327,13 @@ public class DistributedFileService implements FileInterface {
         return fileDAO.save(directory);
     }
 
+    // Crea un directorio cuyos archivos se guardan con la política de redundancia indicada
+    public File createDirectory(String name, Long parentId, long userId, RedundancyPolicy redundancy) throws Exception {
+        File directory = new File(name, parentId, userId, File.DIR_TYPE, 0L);
+        directory.setRedundancy(redundancy.toString());
+        return fileDAO.save(directory);
+    }
+
     public List<File> getUserFiles(long userId) {
         return fileDAO.findByOwnerId(userId);
     }
@@ -156,203 +352,886 @@ public class DistributedFileService implements FileInterface {
         return file;
     }
 
-    /**
-     * Fragmenta un archivo en chunks de tamaño fijo
-     */
-    private List<byte[]> fragmentFile(byte[] data) {
-        List<byte[]> chunks = new ArrayList<>();
-
-        for (int i = 0; i < data.length; i += CHUNK_SIZE) {
-            int end = Math.min(i + CHUNK_SIZE, data.length);
-            byte[] chunk = Arrays.copyOfRange(data, i, end);
-            chunks.add(chunk);
+    // Política del archivo; si no tiene, la del directorio que lo contiene y si no, la del servicio
+    private RedundancyPolicy resolveRedundancy(File file) throws Exception {
+        if (file.getRedundancy() != null) {
+            return RedundancyPolicy.parse(file.getRedundancy());
         }
-
-        return chunks;
+        if (file.getParentId() != null) {
+            File parent = fileDAO.findById(file.getParentId());
+            if (parent != null && parent.getRedundancy() != null) {
+                return RedundancyPolicy.parse(parent.getRedundancy());
+            }
+        }
+        return defaultRedundancy;
     }
 
     /**
-     * Distribuye chunks a nodos disponibles con replicación
+     * Lee el flujo en chunks de tamaño fijo o definidos por su contenido y los
+     * distribuye a nodos disponibles según la política de redundancia.
+     * Devuelve el total de bytes leídos. Si falla la lectura o algún chunk,
+     * deja de leer, espera a los envíos en curso y deshace la subida con
+     * discardChunks antes de relanzar el error.
      */
-    private void distributeChunks(Long fileId, List<byte[]> chunks) throws Exception {
-        logger.info("Iniciando distribución de chunks para archivo ID: " + fileId);
-        logger.info("Cantidad de chunks a distribuir: " + chunks.size());
+    private long distributeChunks(Long fileId, InputStream input, RedundancyPolicy policy, ChunkingMode chunking)
+            throws Exception {
+        logger.info("Iniciando distribución de chunks para archivo ID: " + fileId + " con redundancia " + policy);
         List<Node> availableNodes = nodeManager.getOnlineNodes();
         logger.info("Nodos disponibles: " + availableNodes.size());
-        if (availableNodes.size() < REPLICATION_FACTOR) {
-            logger.severe("No hay suficientes nodos disponibles para replicación. Requeridos: " + REPLICATION_FACTOR);
+        if (availableNodes.size() < policy.getNodesPerChunk()) {
+            logger.severe("No hay suficientes nodos disponibles para la redundancia " + policy + ". Requeridos: " + policy.getNodesPerChunk());
             throw new Exception("No hay suficientes nodos disponibles para replicación");
         }
+        ReedSolomon codec = policy.isErasure()
+                ? new ReedSolomon(policy.getDataShards(), policy.getParityShards())
+                : null;
+
+        // Cada permiso representa un chunk leído cuyo envío aún no termina
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT_CHUNKS);
+        // Las réplicas confirmadas se registran en BD por lotes
+        ChunkMetadataBuffer metadataBuffer = new ChunkMetadataBuffer(fileChunkDAO, metadataBatchSize);
+        ContentDefinedChunker.ChunkStream chunks = chunking == ChunkingMode.CONTENT_DEFINED
+                ? contentDefinedChunker.split(input)
+                : null;
+        // Contenido deduplicado del que cada chunk tomó una referencia, para devolverlas si la subida falla
+        Map<Integer, Long> contentReferences = new ConcurrentHashMap<>();
+        AtomicReference<Throwable> chunkFailure = new AtomicReference<>();
         List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (int i = 0; i < chunks.size(); i++) {
-            final int chunkIndex = i;
-            final byte[] chunkData = chunks.get(i);
-            final String chunkHash = calculateHash(chunkData);
-            logger.info("Preparando chunk " + chunkIndex + " (hash: " + chunkHash + ", tamaño: " + chunkData.length + ")");
-            List<Node> selectedNodes = selectNodesForChunk(availableNodes, chunkIndex);
-            logger.info("Chunk " + chunkIndex + " será distribuido a " + selectedNodes.size() + " nodos");
-            for (Node node : selectedNodes) {
-                logger.info("Enviando chunk " + chunkIndex + " al nodo ID: " + node.getId() + " IP: " + node.getIp() + ":" + node.getPort());
-                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                    try {
-                        storeChunkInNode(fileId, chunkIndex, chunkData, chunkHash, node);
-                    } catch (Exception e) {
-                        logger.severe("Error almacenando chunk " + chunkIndex + " en nodo " + node.getIp() + ":" + node.getPort() + " - " + e.getMessage());
-                        nodeManager.markNodeAsOffline(node.getId());
-                    }
-                }, executorService);
+        long totalBytes = 0;
+        int chunkIndex = 0;
+        Exception failure = null;
+
+        try {
+            while (chunkFailure.get() == null) {
+                inFlight.acquire();
+                byte[] chunkData = chunks != null ? chunks.next() : input.readNBytes(CHUNK_SIZE);
+                if (chunkData.length == 0) {
+                    inFlight.release();
+                    break;
+                }
+
+                final int index = chunkIndex++;
+                totalBytes += chunkData.length;
+                // El SHA-256 solo hace falta para deduplicar; sin deduplicación basta el digest de integridad
+                CompletableFuture<Void> future = CompletableFuture
+                        .supplyAsync(() -> deduplicationEnabled ? ChunkDigest.sha256Hex(chunkData) : null, executorService)
+                        .thenCompose(chunkHash -> storeChunk(fileId, index, chunkData, chunkHash, policy, codec, availableNodes,
+                                metadataBuffer, contentReferences))
+                        .whenComplete((result, error) -> {
+                            if (error != null) {
+                                chunkFailure.compareAndSet(null, error);
+                            }
+                            inFlight.release();
+                        });
+
+                // Descartar los envíos ya completados para no acumular referencias
+                futures.removeIf(CompletableFuture::isDone);
                 futures.add(future);
+
+                // Un chunk fijo incompleto es el último; los definidos por contenido tienen tamaño variable
+                if (chunks == null && chunkData.length < CHUNK_SIZE) {
+                    break;
+                }
             }
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            // Esperar también a los envíos que fallan: hay que saber qué quedó guardado en los nodos
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(error -> null).join();
         }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        logger.info("Distribución de chunks finalizada para archivo ID: " + fileId);
+
+        if (failure == null && chunkFailure.get() != null) {
+            Throwable cause = chunkFailure.get() instanceof CompletionException && chunkFailure.get().getCause() != null
+                    ? chunkFailure.get().getCause()
+                    : chunkFailure.get();
+            failure = cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        }
+        // Persistir también tras un fallo: las filas dicen qué copias hay que borrar al deshacer
+        try {
+            metadataBuffer.flush();
+        } catch (SQLException e) {
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) {
+            logger.severe("Falló la distribución de chunks del archivo ID: " + fileId + ", deshaciendo la subida: "
+                    + failure.getMessage());
+            discardChunks(fileId, availableNodes, contentReferences);
+            throw failure;
+        }
+
+        logger.info("Distribución de chunks finalizada para archivo ID: " + fileId + ". Chunks: " + chunkIndex);
+        return totalBytes;
     }
 
     /**
-     * Almacena un chunk en un nodo específico y registra en BD
+     * Guarda un chunk según la política del archivo. Con deduplicación, si ya
+     * existe el mismo contenido con la misma política solo se añade una
+     * referencia y se registran sus copias, sin transferir nada; si no, el
+     * chunk se guarda en los nodos bajo la clave de su hash.
      */
-    private void storeChunkInNode(Long fileId, int chunkIndex, byte[] chunkData,
-            String chunkHash, Node node) throws Exception {
+    private CompletableFuture<Void> storeChunk(Long fileId, int chunkIndex, byte[] chunkData, String chunkHash,
+            RedundancyPolicy policy, ReedSolomon codec, List<Node> availableNodes, ChunkMetadataBuffer metadataBuffer,
+            Map<Integer, Long> contentReferences) {
+        FileChunk template = newChunkRecord(fileId, chunkIndex, chunkHash, null);
 
-        logger.info("Intentando conectar al nodo ID: " + node.getId() + " RMI: " + node.getRmiUrl());
-        RMIStorageNodeClient client = new RMIStorageNodeClient(node.getRmiUrl());
-        if (!client.connect()) {
-            logger.severe("No se pudo conectar al nodo: " + node.getRmiUrl());
-            throw new Exception("No se pudo conectar al nodo: " + node.getRmiUrl());
+        if (chunkHash != null) {
+            try {
+                if (reuseContent(template, policy, metadataBuffer)) {
+                    contentReferences.put(chunkIndex, template.getContentId());
+                    return CompletableFuture.completedFuture(null);
+                }
+                ContentChunk content = contentChunkDAO.register(new ContentChunk(chunkHash, policy.toString(), chunkData.length));
+                contentReferences.put(chunkIndex, content.getId());
+                template.setContentId(content.getId());
+                template.setContentHash(chunkHash);
+            } catch (SQLException e) {
+                return CompletableFuture.failedFuture(e);
+            }
         }
-        try {
-            String chunkId = fileId + "_" + chunkIndex;
-            logger.info("Almacenando chunk en nodo. chunkId: " + chunkId + ", chunkIndex: " + chunkIndex);
-            boolean stored = client.storeFileChunk(chunkId, chunkIndex, chunkData);
-            if (!stored) {
-                logger.severe("Nodo rechazó el almacenamiento del chunk " + chunkIndex);
-                throw new Exception("Nodo rechazó el almacenamiento del chunk");
-            }
-            FileChunk chunk = new FileChunk();
-            chunk.setFileId(fileId);
-            chunk.setChunkIndex(chunkIndex);
-            chunk.setNodeId(node.getId());
-            chunk.setChecksum(chunkHash);
-            chunk.setReplicated(false);
-            logger.info("Registrando chunk en BD: file_id=" + fileId + ", node_id=" + node.getId() + ", chunk_index=" + chunkIndex);
-            fileChunkDAO.save(chunk);
-            logger.info("Chunk " + chunkIndex + " almacenado exitosamente en nodo " + node.getIp() + ":" + node.getPort());
-        } finally {
-            client.disconnect();
+
+        byte[] payload = compressForStorage(template, chunkData);
+        ChunkDigest.Algorithm integrity = integrityAlgorithm;
+        CompletableFuture<Void> stored;
+        if (codec != null) {
+            stored = CompletableFuture
+                    .supplyAsync(() -> codec.encode(payload, payload.length), executorService)
+                    .thenCompose(shards -> distributeStripe(template, shards, codec, integrity, availableNodes, metadataBuffer));
+        } else {
+            template.setDigest(ChunkDigest.compute(integrity, payload));
+            stored = distributeChunk(template, payload, policy.getReplicas(), availableNodes, metadataBuffer);
         }
+        // Si el chunk no se pudo guardar, discardChunks devuelve la referencia tomada
+        return stored;
     }
 
     /**
-     * Reconstruye un archivo a partir de sus chunks
+     * Registra el chunk como otra referencia a un contenido ya guardado.
+     * Devuelve false si el contenido no existe o si sus copias en nodos
+     * online no cubren la política; en ese caso el chunk se sube de nuevo y
+     * sus copias se registran junto a las que ya tenía el contenido.
      */
-    private byte[] reconstructFile(List<FileChunk> chunks) throws Exception {
-        // Ordenar chunks por número
-        chunks.sort(Comparator.comparingInt(FileChunk::getChunkIndex));
+    private boolean reuseContent(FileChunk template, RedundancyPolicy policy, ChunkMetadataBuffer metadataBuffer)
+            throws SQLException {
+        ContentChunk content = contentChunkDAO.findByHash(template.getChecksum(), policy.toString());
+        if (content == null) {
+            return false;
+        }
+        List<FileChunk> locations = fileChunkDAO.findLocationsByContentId(content.getId());
+        if (!coversPolicy(locations, policy)) {
+            logger.info("Contenido " + content.getId() + " sin copias online suficientes para " + policy
+                    + ", se vuelve a subir el chunk " + template.getChunkIndex());
+            return false;
+        }
+        if (!contentChunkDAO.addReference(content.getId())) {
+            return false;
+        }
+        template.setContentId(content.getId());
+
+        for (FileChunk location : locations) {
+            FileChunk record = newChunkRecord(template.getFileId(), template.getChunkIndex(), location.getChecksum(), null);
+            record.setNodeId(location.getNodeId());
+            record.setFragmentIndex(location.getFragmentIndex());
+            record.setSize(location.getSize());
+            record.setCodec(location.getCodec());
+            record.setRawSize(location.getRawSize());
+            record.setDigest(location.getDigest());
+            record.setContentId(content.getId());
+            record.setContentHash(content.getHash());
+            metadataBuffer.add(record);
+        }
+        logger.info("Chunk " + template.getChunkIndex() + " deduplicado: contenido " + content.getId()
+                + " ya guardado en " + locations.size() + " ubicaciones");
+        return true;
+    }
 
-        List<byte[]> chunkData = new ArrayList<>();
-        int totalSize = 0;
+    // true si hay una réplica por nodo online para cada copia de la política, o los k+m fragmentos en nodos online distintos
+    private boolean coversPolicy(List<FileChunk> locations, RedundancyPolicy policy) {
+        Set<Long> onlineNodes = new HashSet<>();
+        Set<Integer> onlineFragments = new HashSet<>();
+        for (FileChunk location : locations) {
+            if (nodeManager.isNodeOnline(location.getNodeId()) && onlineNodes.add(location.getNodeId())
+                    && location.getFragmentIndex() != null) {
+                onlineFragments.add(location.getFragmentIndex());
+            }
+        }
+        return policy.isErasure()
+                ? onlineFragments.size() >= policy.getNodesPerChunk()
+                : onlineNodes.size() >= policy.getReplicas();
+    }
+
+    /**
+     * Comprime el chunk con el códec del servicio si una muestra indica que se
+     * comprime y el resultado ahorra al menos un 3%; si no, lo deja tal cual.
+     * Registra en la plantilla el códec y los tamaños guardado y original.
+     */
+    private byte[] compressForStorage(FileChunk template, byte[] chunkData) {
+        ChunkCodec compression = compressionCodec;
+        template.setSize(chunkData.length);
+        template.setRawSize(chunkData.length);
+        if (compression == ChunkCodec.NONE || !ChunkCodec.isCompressible(chunkData)) {
+            return chunkData;
+        }
+
+        byte[] compressed = compression.compress(chunkData);
+        if (compressed.length > chunkData.length - chunkData.length / 32) {
+            return chunkData;
+        }
+        template.setCodec(compression.name());
+        template.setSize(compressed.length);
+        logger.fine("Chunk " + template.getChunkIndex() + " comprimido con " + compression + ": "
+                + chunkData.length + " -> " + compressed.length + " bytes");
+        return compressed;
+    }
 
-        // Lista para tareas asíncronas de recuperación
-        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+    // Datos originales de un chunk a partir de los bytes guardados en los nodos
+    private byte[] decodeStoredChunk(FileChunk chunk, byte[] stored) throws IOException {
+        return ChunkCodec.parse(chunk.getCodec()).decompress(stored, chunk.getRawSize());
+    }
 
-        for (FileChunk chunk : chunks) {
-            CompletableFuture<byte[]> future = CompletableFuture.supplyAsync(() -> {
+    /**
+     * Envía un chunk a sus réplicas según el modo de replicación. En cadena,
+     * las réplicas que no confirmaron se reintentan enviándolas directamente,
+     * y si falló la cabeza se elige otro nodo en su lugar. Falla si no se
+     * guardó ninguna copia.
+     */
+    private CompletableFuture<Void> distributeChunk(FileChunk template, byte[] chunkData, int replicas,
+            List<Node> availableNodes, ChunkMetadataBuffer metadataBuffer) {
+        int chunkIndex = template.getChunkIndex();
+        logger.info("Preparando chunk " + chunkIndex + " (hash: " + template.getChecksum() + ", tamaño: " + chunkData.length + ")");
+        List<Node> selectedNodes = selectNodesForChunk(availableNodes, template.getFileId(), chunkIndex, replicas);
+        logger.info("Chunk " + chunkIndex + " será distribuido a " + selectedNodes.size() + " nodos");
+
+        CompletableFuture<Integer> stored;
+        if (replicationMode == ReplicationMode.CHAIN && selectedNodes.size() > 1) {
+            stored = CompletableFuture.supplyAsync(
+                    () -> storeChunkInChain(template, chunkData, selectedNodes, metadataBuffer),
+                    executorService)
+                    .thenCompose(pending -> {
+                        int confirmed = selectedNodes.size() - pending.size();
+                        if (pending.isEmpty()) {
+                            return CompletableFuture.completedFuture(confirmed);
+                        }
+                        List<Node> targets = replaceOfflineNodes(pending, selectedNodes, availableNodes, template);
+                        logger.warning("Chunk " + chunkIndex + " confirmado en " + confirmed + " de " + selectedNodes.size()
+                                + " nodos de la cadena, enviando directamente a " + targets.size() + " nodos");
+                        return fanOutChunk(template, chunkData, targets, metadataBuffer).thenApply(sent -> confirmed + sent);
+                    });
+        } else {
+            stored = fanOutChunk(template, chunkData, selectedNodes, metadataBuffer);
+        }
+
+        return stored.thenAccept(copies -> {
+            if (copies == 0) {
+                throw new CompletionException(new Exception("No se guardó ninguna réplica del chunk " + chunkIndex));
+            }
+            if (copies < selectedNodes.size()) {
+                logger.warning("Chunk " + chunkIndex + " guardado en modo degradado: " + copies + " de " + selectedNodes.size() + " réplicas");
+            }
+        });
+    }
+
+    // Sustituye los nodos que quedaron offline por otros disponibles que aún no guardan el chunk
+    private List<Node> replaceOfflineNodes(List<Node> nodes, List<Node> selectedNodes, List<Node> availableNodes,
+            FileChunk template) {
+        Set<Long> used = new HashSet<>();
+        for (Node node : selectedNodes) {
+            used.add(node.getId());
+        }
+        List<Node> candidates = selectNodesForChunk(availableNodes, template.getFileId(), template.getChunkIndex(),
+                availableNodes.size());
+        List<Node> targets = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (nodeManager.isNodeOnline(node.getId())) {
+                targets.add(node);
+                continue;
+            }
+            for (Node candidate : candidates) {
+                if (!used.contains(candidate.getId()) && nodeManager.isNodeOnline(candidate.getId())) {
+                    used.add(candidate.getId());
+                    targets.add(candidate);
+                    logger.info("Nodo " + candidate.getRmiUrl() + " reemplaza a " + node.getRmiUrl()
+                            + " para el chunk " + template.getChunkIndex());
+                    break;
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Envía cada fragmento Reed-Solomon de un chunk a un nodo distinto en
+     * paralelo. Falla si se guardan menos de k fragmentos, porque el chunk no
+     * podría reconstruirse.
+     */
+    private CompletableFuture<Void> distributeStripe(FileChunk template, byte[][] shards, ReedSolomon codec,
+            ChunkDigest.Algorithm integrity, List<Node> availableNodes, ChunkMetadataBuffer metadataBuffer) {
+        int chunkIndex = template.getChunkIndex();
+        List<Node> selectedNodes = selectNodesForChunk(availableNodes, template.getFileId(), chunkIndex, codec.getTotalShards());
+        if (selectedNodes.size() < codec.getTotalShards()) {
+            return CompletableFuture.failedFuture(new Exception("No hay suficientes nodos para los fragmentos del chunk " + chunkIndex));
+        }
+        logger.info("Chunk " + chunkIndex + " (tamaño: " + template.getSize() + ") será distribuido en " + codec.getDataShards()
+                + "+" + codec.getParityShards() + " fragmentos de " + shards[0].length + " bytes");
+
+        AtomicInteger stored = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            final int fragment = i;
+            Node node = selectedNodes.get(i);
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+                FileChunk record = copyChunkRecord(template, node);
+                record.setFragmentIndex(fragment);
+                record.setDigest(ChunkDigest.compute(integrity, shards[fragment]));
                 try {
-                    return retrieveChunkFromNodes(chunk);
+                    if (nodeClientPool.storeChunk(node, record.getStorageId(), record.getStorageIndex(), shards[fragment])) {
+                        metadataBuffer.add(record);
+                        stored.incrementAndGet();
+                    } else {
+                        logger.severe("Nodo rechazó el fragmento " + fragment + " del chunk " + chunkIndex);
+                    }
                 } catch (Exception e) {
-                    logger.severe("Error recuperando chunk " + chunk.getChunkIndex() +
-                            ": " + e.getMessage());
-                    return null;
+                    logger.severe("Error almacenando fragmento " + fragment + " del chunk " + chunkIndex + " en nodo " + node.getIp() + ":" + node.getPort() + " - " + e.getMessage());
+                    nodeManager.markNodeAsOffline(node.getId());
                 }
             }, executorService);
+            futures.add(future);
+        }
 
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            if (stored.get() < codec.getDataShards()) {
+                throw new CompletionException(new Exception("Solo se guardaron " + stored.get() + " fragmentos del chunk "
+                        + chunkIndex + ", se requieren " + codec.getDataShards()));
+            }
+            if (stored.get() < codec.getTotalShards()) {
+                logger.warning("Chunk " + chunkIndex + " guardado en modo degradado: " + stored.get() + " de " + codec.getTotalShards() + " fragmentos");
+            }
+        });
+    }
+
+    /**
+     * Envía un chunk a cada una de sus réplicas en paralelo. Devuelve cuántas
+     * réplicas lo guardaron; los fallos de cada nodo no fallan el futuro.
+     */
+    private CompletableFuture<Integer> fanOutChunk(FileChunk template, byte[] chunkData, List<Node> selectedNodes,
+            ChunkMetadataBuffer metadataBuffer) {
+        int chunkIndex = template.getChunkIndex();
+        AtomicInteger stored = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Node node : selectedNodes) {
+            logger.info("Enviando chunk " + chunkIndex + " al nodo ID: " + node.getId() + " IP: " + node.getIp() + ":" + node.getPort());
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+                try {
+                    storeChunkInNode(template, chunkData, node, metadataBuffer);
+                    stored.incrementAndGet();
+                } catch (Exception e) {
+                    logger.severe("Error almacenando chunk " + chunkIndex + " en nodo " + node.getIp() + ":" + node.getPort() + " - " + e.getMessage());
+                    nodeManager.markNodeAsOffline(node.getId());
+                }
+            }, executorService);
             futures.add(future);
         }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> stored.get());
+    }
+
+    /**
+     * Envía un chunk una sola vez al primer nodo, que lo guarda y lo propaga al
+     * resto de la cadena; la confirmación vuelve desde el último nodo. Registra
+     * las réplicas confirmadas y devuelve los nodos que no confirmaron (todos
+     * si la cabeza no respondió).
+     */
+    private List<Node> storeChunkInChain(FileChunk template, byte[] chunkData, List<Node> selectedNodes,
+            ChunkMetadataBuffer metadataBuffer) {
+        int chunkIndex = template.getChunkIndex();
+        Node head = selectedNodes.get(0);
+        List<String> downstreamUrls = new ArrayList<>(selectedNodes.size() - 1);
+        for (Node node : selectedNodes.subList(1, selectedNodes.size())) {
+            downstreamUrls.add(node.getRmiUrl());
+        }
+
+        logger.info("Enviando chunk " + chunkIndex + " en cadena desde el nodo " + head.getRmiUrl() + " hacia " + downstreamUrls);
+        boolean[] acks;
+        try {
+            acks = nodeClientPool.storeChunkChain(head, template.getStorageId(), template.getStorageIndex(), chunkData, downstreamUrls);
+        } catch (Exception e) {
+            logger.severe("Error enviando chunk " + chunkIndex + " a la cabeza de la cadena " + head.getIp() + ":" + head.getPort() + " - " + e.getMessage());
+            nodeManager.markNodeAsOffline(head.getId());
+            return selectedNodes;
+        }
 
-        // Esperar y recolectar resultados
-        for (int i = 0; i < futures.size(); i++) {
-            byte[] data = futures.get(i).join();
-            if (data == null) {
-                throw new Exception("No se pudo recuperar chunk " + chunks.get(i).getChunkIndex());
+        List<Node> pending = new ArrayList<>();
+        for (int i = 0; i < selectedNodes.size(); i++) {
+            Node node = selectedNodes.get(i);
+            if (i < acks.length && acks[i]) {
+                metadataBuffer.add(copyChunkRecord(template, node));
+            } else {
+                logger.warning("El nodo " + node.getIp() + ":" + node.getPort() + " no confirmó el chunk " + chunkIndex + " de la cadena");
+                pending.add(node);
             }
-            chunkData.add(data);
-            totalSize += data.length;
         }
+        if (pending.isEmpty()) {
+            logger.info("Chunk " + chunkIndex + " replicado en cadena");
+        }
+        return pending;
+    }
 
-        // Reconstruir archivo
-        byte[] result = new byte[totalSize];
-        int offset = 0;
+    /**
+     * Almacena un chunk en un nodo específico y encola su registro en BD
+     */
+    private void storeChunkInNode(FileChunk template, byte[] chunkData, Node node,
+            ChunkMetadataBuffer metadataBuffer) throws Exception {
+        int chunkIndex = template.getChunkIndex();
+        String chunkId = template.getStorageId();
+        logger.info("Almacenando chunk en nodo " + node.getRmiUrl() + ". chunkId: " + chunkId + ", chunkIndex: " + chunkIndex);
+        boolean stored = nodeClientPool.storeChunk(node, chunkId, template.getStorageIndex(), chunkData);
+        if (!stored) {
+            logger.severe("Nodo rechazó el almacenamiento del chunk " + chunkIndex);
+            throw new Exception("Nodo rechazó el almacenamiento del chunk");
+        }
+        FileChunk chunk = copyChunkRecord(template, node);
+        logger.info("Encolando registro de chunk en BD: file_id=" + chunk.getFileId() + ", node_id=" + node.getId() + ", chunk_index=" + chunkIndex);
+        metadataBuffer.add(chunk);
+        logger.info("Chunk " + chunkIndex + " almacenado exitosamente en nodo " + node.getIp() + ":" + node.getPort());
+    }
 
-        for (byte[] data : chunkData) {
-            System.arraycopy(data, 0, result, offset, data.length);
-            offset += data.length;
+    // Registro en BD de una réplica confirmada
+    private FileChunk newChunkRecord(Long fileId, int chunkIndex, String chunkHash, Node node) {
+        FileChunk chunk = new FileChunk();
+        chunk.setFileId(fileId);
+        chunk.setChunkIndex(chunkIndex);
+        if (node != null) {
+            chunk.setNodeId(node.getId());
         }
+        chunk.setChecksum(chunkHash);
+        chunk.setReplicated(false);
+        return chunk;
+    }
 
-        return result;
+    // Registro de la copia de un chunk en un nodo a partir de los datos comunes del chunk
+    private FileChunk copyChunkRecord(FileChunk template, Node node) {
+        FileChunk chunk = newChunkRecord(template.getFileId(), template.getChunkIndex(), template.getChecksum(), node);
+        chunk.setFragmentIndex(template.getFragmentIndex());
+        chunk.setSize(template.getSize());
+        chunk.setCodec(template.getCodec());
+        chunk.setRawSize(template.getRawSize());
+        chunk.setDigest(template.getDigest());
+        chunk.setContentId(template.getContentId());
+        chunk.setContentHash(template.getContentHash());
+        return chunk;
     }
 
-    // Recupera un chunk de los nodos, probando réplicas si es necesario
+    /**
+     * Recupera los chunks en orden y los escribe en el flujo de salida,
+     * manteniendo una ventana deslizante de chunks pedidos por adelantado. El
+     * tamaño de la ventana lo decide DownloadScheduler: crece con los nodos
+     * que guardan el archivo y se reduce mientras haya otras descargas.
+     */
+    private long streamChunks(Map<Integer, List<ChunkReplica>> replicaPlan, ReedSolomon codec, OutputStream output)
+            throws Exception {
+        List<Map.Entry<Integer, List<ChunkReplica>>> orderedChunks = new ArrayList<>(replicaPlan.entrySet());
+
+        Set<Long> nodeIds = new HashSet<>();
+        for (List<ChunkReplica> replicas : replicaPlan.values()) {
+            for (ChunkReplica replica : replicas) {
+                nodeIds.add(replica.getNode().getId());
+            }
+        }
 
-    private byte[] retrieveChunkFromNodes(FileChunk chunk) throws Exception {
-        // Obtener todas las réplicas de este chunk
-        List<FileChunk> replicas = fileChunkDAO.findByFileIdAndChunkNumber(
-                chunk.getFileId(), chunk.getChunkIndex());
+        Deque<CompletableFuture<byte[]>> window = new ArrayDeque<>();
+        int nextToFetch = 0;
+        long written = 0;
+
+        try (DownloadScheduler.Download download = downloadScheduler.begin(nodeIds.size())) {
+            for (Map.Entry<Integer, List<ChunkReplica>> chunk : orderedChunks) {
+                // Mantener la ventana de prefetch llena mientras el tope global de lecturas lo permita
+                while (nextToFetch < orderedChunks.size() && window.size() < download.window()) {
+                    List<ChunkReplica> replicas = orderedChunks.get(nextToFetch).getValue();
+                    boolean stripe = codec != null && replicas.get(0).getChunk().isFragment();
+                    int reads = stripe ? Math.max(codec.getDataShards(), codec.getParityShards()) : 1;
+                    if (window.isEmpty()) {
+                        downloadScheduler.acquireReads(reads);
+                    } else if (!downloadScheduler.tryAcquireReads(reads)) {
+                        break;
+                    }
+                    nextToFetch++;
+                    CompletableFuture<byte[]> fetch = stripe ? fetchStripeAsync(replicas, codec) : fetchChunkAsync(replicas);
+                    fetch.whenComplete((data, error) -> downloadScheduler.releaseReads(reads));
+                    window.add(fetch);
+                }
 
-        for (FileChunk replica : replicas) {
-            try {
-                Node node = nodeManager.getNodeById(replica.getNodeId());
-                if (node == null || !node.isOnline()) {
-                    continue;
+                byte[] data = window.poll().join();
+                if (data == null) {
+                    throw new Exception("No se pudo recuperar chunk " + chunk.getKey());
                 }
+                output.write(data);
+                written += data.length;
+            }
+            output.flush();
+        } finally {
+            // Si la descarga se interrumpe, descartar los chunks pedidos por adelantado
+            for (CompletableFuture<byte[]> pending : window) {
+                pending.cancel(true);
+            }
+        }
 
-                RMIStorageNodeClient client = new RMIStorageNodeClient(node.getRmiUrl());
-                if (!client.connect()) {
-                    continue;
+        return written;
+    }
+
+    /**
+     * Recupera un chunk replicado sin bloquear hilos del pool. Pide primero la
+     * réplica con menor latencia reciente; si no responde antes del umbral
+     * (un percentil de las lecturas recientes) pide también la siguiente y se
+     * queda con la primera respuesta íntegra, descartando la otra. Una réplica
+     * ausente, corrupta o caída da paso a la siguiente sin esperar. Devuelve
+     * null si ninguna réplica responde.
+     */
+    private CompletableFuture<byte[]> fetchChunkAsync(List<ChunkReplica> replicas) {
+        List<ChunkReplica> candidates = rankReplicas(replicas);
+        if (candidates.isEmpty()) {
+            logger.severe("Chunk " + replicas.get(0).getChunk().getChunkIndex() + " sin réplicas en nodos online");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        HedgedFetch fetch = new HedgedFetch(candidates);
+        fetch.launchNext();
+        if (hedgedReadsEnabled && candidates.size() > 1) {
+            CompletableFuture.delayedExecutor(readLatencyTracker.getThresholdNanos(), TimeUnit.NANOSECONDS, executorService)
+                    .execute(fetch::hedge);
+        }
+        return fetch.result;
+    }
+
+    /**
+     * Réplicas en nodos online ordenadas por la espera estimada: latencia
+     * reciente (EWMA) por operaciones ya en vuelo hacia el nodo. Así los
+     * chunks consecutivos de una descarga se reparten entre las réplicas en
+     * lugar de ir todos al nodo más rápido.
+     */
+    private List<ChunkReplica> rankReplicas(List<ChunkReplica> replicas) {
+        List<ChunkReplica> online = new ArrayList<>();
+        for (ChunkReplica replica : replicas) {
+            if (nodeManager.isNodeOnline(replica.getNode().getId())) {
+                online.add(replica);
+            }
+        }
+        online.sort(Comparator.comparingDouble(replica -> expectedWaitMillis(replica.getNode().getId())));
+        return online;
+    }
+
+    // Un nodo sin muestras cuenta con latencia mínima, así empieza a tenerlas
+    private double expectedWaitMillis(Long nodeId) {
+        double latency = Math.max(MIN_EXPECTED_LATENCY_MILLIS, nodeClientPool.getLatencyMillis(nodeId));
+        return latency * (1 + nodeClientPool.getInFlight(nodeId));
+    }
+
+    // Lectura de un chunk que recorre sus réplicas en orden de preferencia
+    private class HedgedFetch {
+        final List<ChunkReplica> candidates;
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final List<CompletableFuture<byte[]>> requests = new ArrayList<>();
+        private int launched;
+        private int failed;
+
+        HedgedFetch(List<ChunkReplica> candidates) {
+            this.candidates = candidates;
+        }
+
+        // Pedir el chunk a la siguiente réplica; si no quedan y todas fallaron, terminar sin datos
+        synchronized void launchNext() {
+            if (result.isDone()) {
+                return;
+            }
+            if (launched == candidates.size()) {
+                if (failed == launched) {
+                    logger.severe("No se pudo recuperar chunk " + candidates.get(0).getChunk().getChunkIndex()
+                            + " de ningún nodo disponible");
+                    result.complete(null);
                 }
+                return;
+            }
 
-                try {
-                    String chunkId = chunk.getFileId() + "_" + chunk.getChunkIndex();
-                    byte[] data = client.retrieveFileChunk(chunkId, chunk.getChunkIndex());
+            ChunkReplica replica = candidates.get(launched++);
+            FileChunk chunk = replica.getChunk();
+            long start = System.nanoTime();
+            CompletableFuture<byte[]> request = nodeClientPool.retrieveChunkAsync(replica.getNode(),
+                    chunk.getStorageId(), chunk.getStorageIndex(), executorService);
+            requests.add(request);
+            // Verificar y descomprimir fuera del hilo lector de la conexión
+            request.whenCompleteAsync((stored, error) -> onResponse(replica, start, stored, error), executorService);
+        }
 
-                    if (data != null && verifyChunkIntegrity(data, replica.getChecksum())) {
-                        return data;
+        // Si la primera réplica sigue sin responder al cumplirse el umbral, pedir el chunk también a la siguiente.
+        // La lectura de cobertura ocupa una lectura más del tope global; sin ninguna libre no se lanza
+        synchronized void hedge() {
+            if (!result.isDone() && launched == 1 && downloadScheduler.tryAcquireReads(1)) {
+                logger.fine("Lectura de cobertura del chunk " + candidates.get(0).getChunk().getChunkIndex()
+                        + " al nodo " + candidates.get(1).getNode().getId());
+                launchNext();
+                requests.get(requests.size() - 1).whenComplete((data, error) -> downloadScheduler.releaseReads(1));
+            }
+        }
+
+        private void onResponse(ChunkReplica replica, long start, byte[] stored, Throwable error) {
+            FileChunk chunk = replica.getChunk();
+            byte[] data = null;
+            if (error == null && stored != null) {
+                // También cuentan las respuestas descartadas: son las que marcan la cola de latencias
+                readLatencyTracker.record(System.nanoTime() - start);
+                if (result.isDone()) {
+                    return;
+                }
+                if (verifyStoredChunk(chunk, stored)) {
+                    try {
+                        data = decodeStoredChunk(chunk, stored);
+                    } catch (IOException e) {
+                        logger.warning("Réplica del chunk " + chunk.getChunkIndex() + " en nodo " + replica.getNode().getId()
+                                + " no se pudo descomprimir: " + e.getMessage());
                     }
-                } finally {
-                    client.disconnect();
                 }
+            }
+            if (result.isDone()) {
+                return;
+            }
 
-            } catch (Exception e) {
-                logger.warning("Error recuperando chunk de nodo: " + e.getMessage());
-                // Continuar con la siguiente réplica
+            if (data != null) {
+                if (result.complete(data)) {
+                    cancelPending();
+                }
+                return;
+            }
+            if (error != null && !(error instanceof CancellationException)) {
+                logger.warning("Error recuperando chunk " + chunk.getChunkIndex() + " de nodo " + replica.getNode().getId()
+                        + ": " + error.getMessage());
+            } else {
+                logger.warning("Réplica del chunk " + chunk.getChunkIndex() + " en nodo " + replica.getNode().getId()
+                        + " ausente o corrupta");
+            }
+            synchronized (this) {
+                failed++;
+                launchNext();
             }
         }
 
-        throw new Exception("No se pudo recuperar chunk " + chunk.getChunkIndex() +
-                " de ningún nodo disponible");
+        // Descartar las peticiones perdedoras; las que ya viajan terminan en el nodo pero se ignoran
+        private synchronized void cancelPending() {
+            for (CompletableFuture<byte[]> request : requests) {
+                request.cancel(false);
+            }
+        }
     }
 
-    // Elimina chunks de todos los nodos
+    /**
+     * Recupera un chunk guardado con erasure coding. Pide primero los k
+     * fragmentos de datos, que no requieren decodificar; si alguno falta o está
+     * corrupto pide la paridad y reconstruye con cualquier k fragmentos.
+     * Devuelve null si no se reúnen k fragmentos válidos.
+     */
+    private CompletableFuture<byte[]> fetchStripeAsync(List<ChunkReplica> fragments, ReedSolomon codec) {
+        ChunkReplica[] byIndex = new ChunkReplica[codec.getTotalShards()];
+        for (ChunkReplica fragment : fragments) {
+            int index = fragment.getChunk().getFragmentIndex();
+            if (index < byIndex.length) {
+                byIndex[index] = fragment;
+            }
+        }
+        int chunkIndex = fragments.get(0).getChunk().getChunkIndex();
+        int chunkSize = fragments.get(0).getChunk().getSize();
+        byte[][] shards = new byte[codec.getTotalShards()][];
+
+        return fetchFragments(byIndex, shards, 0, codec.getDataShards())
+                .thenCompose(dataShards -> dataShards == codec.getDataShards()
+                        ? CompletableFuture.completedFuture(dataShards)
+                        : fetchFragments(byIndex, shards, codec.getDataShards(), codec.getTotalShards())
+                                .thenApply(parityShards -> dataShards + parityShards))
+                .thenApply(available -> {
+                    if (available < codec.getDataShards()) {
+                        logger.severe("Chunk " + chunkIndex + " irrecuperable: " + available + " fragmentos válidos de "
+                                + codec.getDataShards() + " necesarios");
+                        return null;
+                    }
+                    boolean[] present = new boolean[shards.length];
+                    for (int i = 0; i < shards.length; i++) {
+                        present[i] = shards[i] != null;
+                    }
+                    if (available < shards.length) {
+                        logger.info("Reconstruyendo chunk " + chunkIndex + " a partir de " + available + " fragmentos");
+                        codec.reconstruct(shards, present, codec.shardSize(chunkSize));
+                    }
+                    FileChunk chunk = fragments.get(0).getChunk();
+                    try {
+                        return decodeStoredChunk(chunk, codec.join(shards, chunkSize));
+                    } catch (IOException e) {
+                        logger.severe("Chunk " + chunkIndex + " no se pudo descomprimir: " + e.getMessage());
+                        return null;
+                    }
+                });
+    }
 
-    private void deleteChunksFromNodes(List<FileChunk> chunks) {
+    // Pide en paralelo los fragmentos [from, to) y devuelve cuántos llegaron íntegros
+    private CompletableFuture<Integer> fetchFragments(ChunkReplica[] byIndex, byte[][] shards, int from, int to) {
         List<CompletableFuture<Void>> futures = new ArrayList<>();
+        AtomicInteger fetched = new AtomicInteger();
+        for (int i = from; i < to; i++) {
+            ChunkReplica fragment = byIndex[i];
+            if (fragment == null || !nodeManager.isNodeOnline(fragment.getNode().getId())) {
+                continue;
+            }
+            final int index = i;
+            FileChunk chunk = fragment.getChunk();
+            futures.add(nodeClientPool
+                    .retrieveChunkAsync(fragment.getNode(), chunk.getStorageId(), chunk.getStorageIndex(), executorService)
+                    .handleAsync((data, error) -> {
+                        if (error != null) {
+                            logger.warning("Error recuperando fragmento " + index + " del chunk " + chunk.getChunkIndex() + ": " + error.getMessage());
+                        } else if (data != null && verifyStoredChunk(chunk, data)) {
+                            shards[index] = data;
+                            fetched.incrementAndGet();
+                        }
+                        return null;
+                    }, executorService));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> fetched.get());
+    }
+
+    /**
+     * Quita las referencias del archivo a sus contenidos deduplicados. Solo
+     * cuando un contenido se queda sin referencias se borran sus copias de
+     * los nodos; mientras tenga alguna, todas se conservan.
+     */
+    private void releaseContentChunks(long fileId, Map<Integer, List<ChunkReplica>> replicaPlan) {
+        // Cada chunk del archivo con un contenido es una referencia
+        Map<Long, Set<Integer>> chunksByContent = new LinkedHashMap<>();
+        for (List<ChunkReplica> replicas : replicaPlan.values()) {
+            for (ChunkReplica replica : replicas) {
+                if (replica.getChunk().getContentId() != null) {
+                    chunksByContent.computeIfAbsent(replica.getChunk().getContentId(), id -> new HashSet<>())
+                            .add(replica.getChunk().getChunkIndex());
+                }
+            }
+        }
+        Map<Long, Integer> references = new LinkedHashMap<>();
+        for (Map.Entry<Long, Set<Integer>> content : chunksByContent.entrySet()) {
+            references.put(content.getKey(), content.getValue().size());
+        }
+        releaseContents(fileId, references);
+    }
+
+    /**
+     * Quita las referencias indicadas por contenido. Los contenidos que se
+     * quedan sin ninguna se borran de todos los nodos que figuran en
+     * content_locations, incluidas las copias que añadió otra subida al
+     * volver a subir el chunk; las que no se pudieron borrar (nodo offline)
+     * siguen registradas.
+     */
+    private void releaseContents(long fileId, Map<Long, Integer> references) {
+        if (references.isEmpty()) {
+            return;
+        }
+
+        List<CompletableFuture<List<ContentLocation>>> futures = new ArrayList<>();
+        for (Map.Entry<Long, Integer> content : references.entrySet()) {
+            long contentId = content.getKey();
+            int remaining = 0;
+            try {
+                for (int i = 0; i < content.getValue(); i++) {
+                    remaining = contentChunkDAO.release(contentId);
+                }
+            } catch (SQLException e) {
+                logger.severe("Error liberando el contenido " + contentId + ": " + e.getMessage());
+                continue;
+            }
+            // ref_count es lo único que dice si el contenido sigue en uso: las filas de file_chunks
+            // de otra subida que lo reutiliza pueden estar aún en su ChunkMetadataBuffer
+            if (remaining > 0) {
+                continue;
+            }
+
+            List<ContentLocation> locations;
+            try {
+                locations = contentChunkDAO.findLocations(contentId);
+            } catch (SQLException e) {
+                logger.severe("Error consultando las copias del contenido " + contentId + ": " + e.getMessage());
+                continue;
+            }
+            for (ContentLocation location : locations) {
+                Node node = nodeManager.getNodeById(location.getNodeId());
+                if (node == null || !nodeManager.isNodeOnline(node.getId())) {
+                    continue;
+                }
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        nodeClientPool.deleteChunk(node, location.getStorageId(), location.getStorageIndex());
+                        return List.of(location);
+                    } catch (Exception e) {
+                        logger.warning("Error eliminando contenido " + contentId + " en nodo " + node.getId() + ": " + e.getMessage());
+                        return List.<ContentLocation>of();
+                    }
+                }, executorService));
+            }
+        }
+
+        List<ContentLocation> deleted = new ArrayList<>();
+        for (CompletableFuture<List<ContentLocation>> future : futures) {
+            deleted.addAll(future.join());
+        }
+        try {
+            contentChunkDAO.deleteLocations(deleted);
+        } catch (SQLException e) {
+            logger.warning("Error olvidando las copias borradas de contenidos: " + e.getMessage());
+        }
+        logger.info("Liberadas las referencias del archivo " + fileId + " a " + references.size() + " contenidos");
+    }
+
+    /**
+     * Deshace una subida fallida: devuelve las referencias a contenidos que
+     * tomaron sus chunks, borra los chunks guardados bajo la clave del archivo
+     * en todos los nodos a los que pudo enviarlos y elimina sus filas. Los
+     * errores solo se registran, para no ocultar el fallo original.
+     */
+    private void discardChunks(long fileId, List<Node> nodes, Map<Integer, Long> contentReferences) {
+        Map<Long, Integer> references = new LinkedHashMap<>();
+        for (Long contentId : contentReferences.values()) {
+            references.merge(contentId, 1, Integer::sum);
+        }
+        releaseContents(fileId, references);
+        deleteChunksFromNodes(fileId, nodes);
+        try {
+            fileChunkDAO.deleteByFileId(fileId);
+        } catch (SQLException e) {
+            logger.severe("Error eliminando los chunks registrados del archivo " + fileId + ": " + e.getMessage());
+        }
+    }
+
+    // Nodos que guardan chunks del archivo bajo su propia clave (no deduplicados)
+    private Collection<Node> nodesWithFileChunks(Map<Integer, List<ChunkReplica>> replicaPlan) {
+        Map<Long, Node> nodesWithChunks = new LinkedHashMap<>();
+        for (List<ChunkReplica> replicas : replicaPlan.values()) {
+            for (ChunkReplica replica : replicas) {
+                if (replica.getChunk().getContentId() == null) {
+                    nodesWithChunks.putIfAbsent(replica.getNode().getId(), replica.getNode());
+                }
+            }
+        }
+        return nodesWithChunks.values();
+    }
+
+    // Elimina los chunks guardados bajo la clave del archivo con una sola llamada por nodo
+    private void deleteChunksFromNodes(long fileId, Collection<Node> nodesWithChunks) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Node node : nodesWithChunks) {
+            if (!nodeManager.isNodeOnline(node.getId())) {
+                continue;
+            }
 
-        for (FileChunk chunk : chunks) {
             CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
                 try {
-                    Node node = nodeManager.getNodeById(chunk.getNodeId());
-                    if (node != null && node.isOnline()) {
-                        RMIStorageNodeClient client = new RMIStorageNodeClient(node.getRmiUrl());
-                        if (client.connect()) {
-                            try {
-                                String chunkId = chunk.getFileId() + "_" + chunk.getChunkIndex();
-                                client.deleteFileChunk(chunkId, chunk.getChunkIndex());
-                            } finally {
-                                client.disconnect();
-                            }
-                        }
-                    }
+                    int deleted = nodeClientPool.execute(node, stub -> stub.deleteFileChunks(String.valueOf(fileId)));
+                    logger.info("Eliminados " + deleted + " chunks del archivo " + fileId + " en nodo " + node.getId());
                 } catch (Exception e) {
-                    logger.warning("Error eliminando chunk: " + e.getMessage());
+                    logger.warning("Error eliminando chunks en nodo " + node.getId() + ": " + e.getMessage());
                 }
             }, executorService);
 
@@ -365,44 +1244,73 @@ public class DistributedFileService implements FileInterface {
 
     // Selecciona nodos para almacenar un chunk (con replicación)
 
-    private List<Node> selectNodesForChunk(List<Node> availableNodes, int chunkIndex) {
-        List<Node> selectedNodes = new ArrayList<>();
+    private List<Node> selectNodesForChunk(List<Node> availableNodes, long fileId, int chunkIndex, int count) {
+        return placementStrategy.selectNodes(availableNodes, fileId, chunkIndex, count);
+    }
 
-        // Algoritmo simple de selección round-robin con offset
-        for (int i = 0; i < REPLICATION_FACTOR && i < availableNodes.size(); i++) {
-            int nodeIndex = (chunkIndex + i) % availableNodes.size();
-            selectedNodes.add(availableNodes.get(nodeIndex));
+    /**
+     * Comprueba los bytes que devolvió un nodo contra el digest de la fila,
+     * antes de descomprimir. Las filas anteriores a los digests binarios se
+     * comprueban con su SHA-256 en hexadecimal, que es del chunk original.
+     */
+    private boolean verifyStoredChunk(FileChunk chunk, byte[] stored) {
+        if (chunk.getDigest() != null) {
+            return ChunkDigest.matches(chunk.getDigest(), stored);
+        }
+        if (chunk.getChecksum() == null) {
+            return false;
+        }
+        try {
+            byte[] original = chunk.isFragment() ? stored : decodeStoredChunk(chunk, stored);
+            return ChunkDigest.sha256Hex(original).equals(chunk.getChecksum());
+        } catch (IOException e) {
+            return false;
         }
+    }
 
-        return selectedNodes;
+    // Número de réplicas confirmadas que se registran en BD por lote (1 = registro inmediato)
+    public void setMetadataBatchSize(int metadataBatchSize) {
+        this.metadataBatchSize = Math.max(1, metadataBatchSize);
     }
 
-    // Calcula el hash de un array de bytes
-    private String calculateHash(byte[] data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
+    // Redundancia de los archivos sin política propia ni heredada (por defecto, replica:REPLICATION_FACTOR)
+    public void setDefaultRedundancy(RedundancyPolicy defaultRedundancy) {
+        this.defaultRedundancy = defaultRedundancy;
+    }
 
-            return hexString.toString();
-        } catch (Exception e) {
-            logger.severe("Error calculando hash: " + e.getMessage());
-            return "";
-        }
+    // Deduplicación por contenido de los chunks subidos (storage.dedup=false la desactiva)
+    public void setDeduplicationEnabled(boolean deduplicationEnabled) {
+        this.deduplicationEnabled = deduplicationEnabled;
+    }
+
+    // Fragmentación de las subidas sin modo explícito (por defecto, tamaño fijo; storage.chunking=cdc)
+    public void setChunkingMode(ChunkingMode chunkingMode) {
+        this.chunkingMode = chunkingMode;
+    }
+
+    // Códec de los chunks nuevos (por defecto, NONE; storage.compression=lz4|deflate)
+    public void setCompressionCodec(ChunkCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    // Lecturas de cobertura a una segunda réplica (storage.read.hedging=false las desactiva)
+    public void setHedgedReadsEnabled(boolean hedgedReadsEnabled) {
+        this.hedgedReadsEnabled = hedgedReadsEnabled;
+    }
+
+    // Digest de integridad de los chunks nuevos (por defecto, CRC32C; storage.integrity=sha256)
+    public void setIntegrityAlgorithm(ChunkDigest.Algorithm integrityAlgorithm) {
+        this.integrityAlgorithm = integrityAlgorithm;
+    }
+
+    // Modo de replicación de las subidas (por defecto, en cadena; storage.replication.mode=fanout lo cambia)
+    public void setReplicationMode(ReplicationMode replicationMode) {
+        this.replicationMode = replicationMode;
     }
-    // Verifica la integridad de un chunk
 
-    private boolean verifyChunkIntegrity(byte[] data, String expectedHash) {
-        String actualHash = calculateHash(data);
-        return actualHash.equals(expectedHash);
+    // Estrategia de ubicación de réplicas (por defecto, hashing consistente ponderado por carga)
+    public void setPlacementStrategy(PlacementStrategy placementStrategy) {
+        this.placementStrategy = placementStrategy;
     }
 
     // Cierra el servicio liberando recursos
@@ -411,5 +1319,6 @@ public class DistributedFileService implements FileInterface {
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
         }
+        nodeClientPool.clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package servidor.aplicacion.services;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reparte la capacidad de lectura entre las descargas simultáneas.
+ * - Cada descarga pide por adelantado como máximo su ventana de chunks
+ * - La ventana crece con los nodos que guardan el archivo, hasta un tope por
+ *   descarga, para que el rendimiento escale con los nodos y no con los hilos
+ * - El total de chunks en vuelo se reparte a partes iguales entre las
+ *   descargas activas: una descarga grande no acapara la capacidad y, al
+ *   terminar las demás, recupera su ventana completa
+ * - maxInFlight (storage.download.maxInFlight) es además un tope global de
+ *   lecturas a nodos: cada chunk pedido reserva las suyas antes de salir y
+ *   las devuelve al terminar. Un chunk replicado cuenta una (más una si lanza
+ *   una lectura de cobertura) y uno con erasure coding max(k, m), lo que
+ *   tienen a la vez en vuelo sus fases de datos y de paridad
+ * Con más descargas que capacidad cada una espera a tener un chunk en vuelo
+ * para seguir avanzando. El límite por nodo lo impone NodeClientPool.
+ */
+public class DownloadScheduler {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    // Chunks en vuelo por nodo que guarda el archivo
+    private static final int WINDOW_PER_NODE = 2;
+    private static final int MIN_WINDOW = 2;
+    private static final int MAX_WINDOW_PER_DOWNLOAD = 16;
+
+    private final int maxInFlight;
+    private final AtomicInteger activeDownloads;
+    // Lecturas a nodos disponibles entre todas las descargas
+    private final Semaphore reads;
+
+    public DownloadScheduler() {
+        this(DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public DownloadScheduler(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.activeDownloads = new AtomicInteger();
+        this.reads = new Semaphore(this.maxInFlight, true);
+    }
+
+    // Registra una descarga de un archivo repartido en nodeCount nodos; hay que cerrarla al terminar
+    public Download begin(int nodeCount) {
+        activeDownloads.incrementAndGet();
+        int limit = Math.min(MAX_WINDOW_PER_DOWNLOAD, Math.max(MIN_WINDOW, nodeCount * WINDOW_PER_NODE));
+        return new Download(limit);
+    }
+
+    // Espera a reservar lecturas; solo debe llamarlo una descarga sin nada en vuelo
+    public void acquireReads(int count) throws InterruptedException {
+        reads.acquire(cap(count));
+    }
+
+    // Reserva lecturas si el tope global lo permite en este momento
+    public boolean tryAcquireReads(int count) {
+        return reads.tryAcquire(cap(count));
+    }
+
+    public void releaseReads(int count) {
+        reads.release(cap(count));
+    }
+
+    // Lecturas a nodos en curso entre todas las descargas
+    public int getReadsInFlight() {
+        return maxInFlight - reads.availablePermits();
+    }
+
+    // Un chunk que necesita más lecturas que el tope lo ocupa entero
+    private int cap(int count) {
+        return Math.min(Math.max(1, count), maxInFlight);
+    }
+
+    public int getActiveDownloads() {
+        return activeDownloads.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    // Descarga en curso; su ventana se recalcula a medida que entran y salen otras descargas
+    public class Download implements AutoCloseable {
+        private final int limit;
+        private boolean closed;
+
+        private Download(int limit) {
+            this.limit = limit;
+        }
+
+        // Chunks que esta descarga puede tener pedidos a la vez en este momento
+        public int window() {
+            int active = Math.max(1, activeDownloads.get());
+            int fairShare = (maxInFlight + active - 1) / active;
+            return Math.max(1, Math.min(limit, fairShare));
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                activeDownloads.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package servidor.aplicacion.services;
+
+import java.util.Arrays;
+
+/**
+ * Latencias recientes de lectura de chunks y el umbral a partir del cual se
+ * lanza una lectura de cobertura a otra réplica.
+ * - Ventana circular de las últimas WINDOW_SIZE lecturas
+ * - El umbral es el percentil configurado de la ventana, recalculado cada
+ *   RECOMPUTE_EVERY muestras para no ordenar la ventana en cada lectura
+ * - Con pocas muestras se usa un umbral fijo
+ */
+public class ReadLatencyTracker {
+
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    private static final int WINDOW_SIZE = 512;
+    private static final int MIN_SAMPLES = 32;
+    private static final int RECOMPUTE_EVERY = 32;
+    private static final long DEFAULT_THRESHOLD_NANOS = 50_000_000L;
+    // Un umbral demasiado bajo duplicaría casi todas las lecturas rápidas
+    private static final long MIN_THRESHOLD_NANOS = 2_000_000L;
+
+    private final double percentile;
+    private final long[] samples;
+    private int count;
+    private int next;
+    private int sinceRecompute;
+    private volatile long thresholdNanos;
+
+    public ReadLatencyTracker() {
+        this(DEFAULT_PERCENTILE);
+    }
+
+    public ReadLatencyTracker(double percentile) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentil inválido: " + percentile);
+        }
+        this.percentile = percentile;
+        this.samples = new long[WINDOW_SIZE];
+        this.thresholdNanos = DEFAULT_THRESHOLD_NANOS;
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        if (count >= MIN_SAMPLES && ++sinceRecompute >= RECOMPUTE_EVERY) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            long value = sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+            thresholdNanos = Math.max(MIN_THRESHOLD_NANOS, value);
+        }
+    }
+
+    // Espera antes de pedir el chunk a una segunda réplica
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+}
@@ -1,6 +1,7 @@
 package servidor.aplicacion.soap.services;
 import jakarta.jws.WebService;
 import servidor.aplicacion.dao.FileDAO;
+import servidor.aplicacion.dao.ContentChunkDAO;
 import servidor.aplicacion.dao.FileChunkDAO;
 import servidor.aplicacion.dto.FileDTO;
 import servidor.aplicacion.dto.DirectoryListDTO;
@@ -26,9 +27,10 @@ public class FileServiceSOAP implements FileInterfaceSOAP {
         // Inicializar el servicio distribuido con todas las dependencias
         FileDAO fileDAO = new FileDAO();
         FileChunkDAO fileChunkDAO = new FileChunkDAO();
+        ContentChunkDAO contentChunkDAO = new ContentChunkDAO();
         NodeManager nodeManager = new NodeManager();
         
-        this.distributedFileService = new DistributedFileService(fileDAO, fileChunkDAO, nodeManager);
+        this.distributedFileService = new DistributedFileService(fileDAO, fileChunkDAO, contentChunkDAO, nodeManager);
     }
     
     @Override
@@ -0,0 +1,134 @@
+package servidor.aplicacion.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Códecs de compresión de chunks. El códec de cada chunk se guarda en
+ * file_chunks.codec junto con su tamaño original; los nodos guardan los bytes
+ * comprimidos sin saber que lo están.
+ * - NONE: el chunk se guarda tal cual
+ * - LZ4: rápido, para comprimir en la ruta de subida sin frenarla
+ * - DEFLATE: más lento pero con mejor tasa, para datos que se leen poco
+ */
+public enum ChunkCodec {
+
+    NONE {
+        @Override
+        public byte[] compress(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int rawLength) {
+            return data;
+        }
+    },
+
+    LZ4 {
+        @Override
+        public byte[] compress(byte[] data) {
+            return Lz4.compress(data, data.length);
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int rawLength) throws IOException {
+            return Lz4.decompress(data, rawLength);
+        }
+    },
+
+    DEFLATE {
+        @Override
+        public byte[] compress(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                byte[] output = new byte[Lz4.maxCompressedLength(data.length)];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+                return Arrays.copyOf(output, length);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decompress(byte[] data, int rawLength) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                byte[] output = new byte[rawLength];
+                int length = 0;
+                while (length < rawLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(output, length, rawLength - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length != rawLength) {
+                    throw new IOException("Bloque deflate de " + length + " bytes, se esperaban " + rawLength);
+                }
+                return output;
+            } catch (DataFormatException e) {
+                throw new IOException("Bloque deflate corrupto: " + e.getMessage(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    // Muestras que se comprimen para decidir si vale la pena comprimir un chunk
+    private static final int SAMPLE_COUNT = 4;
+    private static final int SAMPLE_SIZE = 16 * 1024;
+    // Por debajo de este tamaño la cabecera y el coste no compensan
+    private static final int MIN_COMPRESSIBLE_SIZE = 4 * 1024;
+
+    public abstract byte[] compress(byte[] data);
+
+    public abstract byte[] decompress(byte[] data, int rawLength) throws IOException;
+
+    // Códec guardado en BD; null (chunks anteriores a la compresión) equivale a NONE
+    public static ChunkCodec parse(String value) {
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Códec de compresión desconocido: " + value);
+        }
+    }
+
+    /**
+     * Estima si los datos se comprimen comprimiendo con LZ4 unas muestras
+     * repartidas por el chunk. Los datos ya comprimidos (imágenes, vídeo,
+     * zip) no bajan del 90% y se guardan sin comprimir sin pagar el coste de
+     * procesar el chunk entero.
+     */
+    public static boolean isCompressible(byte[] data) {
+        if (data.length < MIN_COMPRESSIBLE_SIZE) {
+            return false;
+        }
+        int sampleSize = Math.min(SAMPLE_SIZE, data.length / SAMPLE_COUNT);
+        int stride = (data.length - sampleSize) / Math.max(1, SAMPLE_COUNT - 1);
+        long sampled = 0;
+        long compressed = 0;
+        byte[] sample = new byte[sampleSize];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            System.arraycopy(data, i * stride, sample, 0, sampleSize);
+            sampled += sampleSize;
+            compressed += Lz4.compress(sample, sampleSize).length;
+        }
+        return compressed * 10 < sampled * 9;
+    }
+}
@@ -0,0 +1,89 @@
+package servidor.aplicacion.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * Digests de integridad de los chunks, guardados en binario.
+ * - CRC32C: 4 bytes; la JVM lo implementa con instrucciones de CPU y cuesta
+ *   una fracción de un hash criptográfico. Detecta corrupción en la red o en
+ *   disco, no manipulación deliberada
+ * - SHA256: 32 bytes; para quien necesite resistencia a colisiones
+ * El algoritmo de un digest guardado se deduce de su longitud. La
+ * deduplicación usa siempre SHA-256 (sha256Hex), con independencia del modo.
+ */
+public final class ChunkDigest {
+
+    public enum Algorithm {
+        CRC32C(4),
+        SHA256(32);
+
+        private final int length;
+
+        Algorithm(int length) {
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        // Interpreta "crc32c" o "sha256"; null equivale a CRC32C
+        public static Algorithm parse(String value) {
+            if (value == null || value.isBlank()) {
+                return CRC32C;
+            }
+            String text = value.trim().toUpperCase().replace("-", "");
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name().equals(text)) {
+                    return algorithm;
+                }
+            }
+            throw new IllegalArgumentException("Algoritmo de integridad desconocido: " + value);
+        }
+    }
+
+    private static final HexFormat HEX = HexFormat.of();
+    // MessageDigest no es seguro entre hilos; getInstance en cada chunk recorre los proveedores
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    });
+
+    private ChunkDigest() {
+    }
+
+    public static byte[] compute(Algorithm algorithm, byte[] data) {
+        if (algorithm == Algorithm.CRC32C) {
+            CRC32C crc = new CRC32C();
+            crc.update(data, 0, data.length);
+            int value = (int) crc.getValue();
+            return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+        }
+        return SHA256.get().digest(data);
+    }
+
+    // Comprueba los datos contra un digest guardado; false si la longitud no es de ningún algoritmo conocido
+    public static boolean matches(byte[] expected, byte[] data) {
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (algorithm.getLength() == expected.length) {
+                return MessageDigest.isEqual(expected, compute(algorithm, data));
+            }
+        }
+        return false;
+    }
+
+    // SHA-256 en hexadecimal, la clave de los contenidos deduplicados
+    public static String sha256Hex(byte[] data) {
+        return HEX.formatHex(SHA256.get().digest(data));
+    }
+
+    public static String toHex(byte[] digest) {
+        return digest != null ? HEX.formatHex(digest) : null;
+    }
+}
@@ -0,0 +1,148 @@
+package servidor.aplicacion.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Fragmentación por contenido (content-defined chunking) al estilo FastCDC.
+ * - Un hash Gear rodante, h = (h << 1) + GEAR[byte], recorre los datos y se
+ *   corta donde los bits altos del hash son cero, así los cortes dependen de
+ *   los últimos 64 bytes y no de la posición en el archivo
+ * - Insertar o borrar bytes solo mueve los cortes de la zona editada; el resto
+ *   de chunks conserva su contenido y su hash, y la deduplicación los reutiliza
+ * - No se evalúan cortes antes de minSize; hasta avgSize se usa una máscara
+ *   más exigente y después una más permisiva (normalización de FastCDC), lo
+ *   que concentra los tamaños alrededor de avgSize; en maxSize se corta siempre
+ * La tabla GEAR es fija: cambiarla cambia todos los cortes y anula la
+ * deduplicación frente a los chunks ya guardados.
+ * Las instancias son inmutables y se pueden compartir entre hilos.
+ */
+public final class ContentDefinedChunker {
+
+    public static final int DEFAULT_MIN_SIZE = 256 * 1024;
+    public static final int DEFAULT_AVG_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    // Semilla de la tabla GEAR; forma parte del formato de los chunks
+    private static final long GEAR_SEED = 0x5DEECE66DL;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // SplitMix64: valores pseudoaleatorios reproducibles en cualquier JVM
+        long state = GEAR_SEED;
+        for (int i = 0; i < GEAR.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    // Máscara antes de avgSize (más bits, cortes menos probables) y después (menos bits)
+    private final long strictMask;
+    private final long looseMask;
+
+    public ContentDefinedChunker() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_AVG_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    public ContentDefinedChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize < 64 || Integer.bitCount(avgSize) != 1 || minSize >= avgSize || avgSize >= maxSize) {
+            throw new IllegalArgumentException("Tamaños de chunk inválidos: min=" + minSize + ", avg=" + avgSize
+                    + ", max=" + maxSize + " (se requiere 64 <= min < avg < max y avg potencia de dos)");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        this.strictMask = highBits(bits + 2);
+        this.looseMask = highBits(Math.max(1, bits - 2));
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getAvgSize() {
+        return avgSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    // Longitud del chunk que empieza en offset, mirando como mucho length bytes
+    public int nextBoundary(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int normalEnd = offset + Math.min(length, avgSize);
+        int end = offset + Math.min(length, maxSize);
+
+        long hash = 0;
+        int i = offset + minSize;
+        for (; i < normalEnd; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & strictMask) == 0) {
+                return i + 1 - offset;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & looseMask) == 0) {
+                return i + 1 - offset;
+            }
+        }
+        return end - offset;
+    }
+
+    // Divide un flujo en chunks definidos por su contenido
+    public ChunkStream split(InputStream input) {
+        return new ChunkStream(input);
+    }
+
+    private static long highBits(int count) {
+        return -1L << (64 - count);
+    }
+
+    /**
+     * Lector de chunks sobre un flujo. Mantiene un búfer de maxSize bytes: los
+     * datos que siguen al corte se conservan para el chunk siguiente. No es
+     * seguro para varios hilos.
+     */
+    public final class ChunkStream {
+        private final InputStream input;
+        private final byte[] buffer;
+        private int buffered;
+        private boolean endOfStream;
+
+        private ChunkStream(InputStream input) {
+            this.input = input;
+            this.buffer = new byte[maxSize];
+        }
+
+        // Siguiente chunk; un array vacío indica el final del flujo
+        public byte[] next() throws IOException {
+            if (!endOfStream && buffered < buffer.length) {
+                // readNBytes bloquea hasta llenar el búfer o llegar al final
+                int read = input.readNBytes(buffer, buffered, buffer.length - buffered);
+                buffered += read;
+                endOfStream = buffered < buffer.length;
+            }
+            if (buffered == 0) {
+                return new byte[0];
+            }
+
+            int length = nextBoundary(buffer, 0, buffered);
+            byte[] chunk = Arrays.copyOf(buffer, length);
+            buffered -= length;
+            System.arraycopy(buffer, length, buffer, 0, buffered);
+            return chunk;
+        }
+    }
+}
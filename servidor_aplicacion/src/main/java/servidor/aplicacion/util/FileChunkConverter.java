@@ -19,7 +19,8 @@ public class FileChunkConverter {
         dto.setFileId(chunk.getFileId());
         dto.setNodeId(chunk.getNodeId());
         dto.setChunkIndex(chunk.getChunkIndex());
-        dto.setChecksum(chunk.getChecksum());
+        // Sin SHA-256 (deduplicación desactivada) se expone el digest de integridad
+        dto.setChecksum(chunk.getChecksum() != null ? chunk.getChecksum() : ChunkDigest.toHex(chunk.getDigest()));
         dto.setReplicated(chunk.getReplicated());
         dto.setCreatedAt(chunk.getCreatedAt());
 
@@ -0,0 +1,180 @@
+package servidor.aplicacion.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compresión LZ4 en formato de bloque, en Java puro.
+ * - Un solo paso con una tabla hash de secuencias de 4 bytes; sin búsqueda
+ *   de la mejor coincidencia, prioriza la velocidad sobre la tasa
+ * - Cuanto más tiempo pasa sin encontrar coincidencias, más bytes se saltan,
+ *   así los datos poco compresibles se recorren rápido
+ * - El bloque no guarda la longitud original: quien descomprime debe conocerla
+ * Compatible con el formato de bloque de LZ4 (sin el marco .lz4).
+ */
+public final class Lz4 {
+
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final int MIN_MATCH = 4;
+    // El formato exige que los últimos 5 bytes sean literales y que la última coincidencia empiece 12 bytes antes del final
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+
+    private Lz4() {
+    }
+
+    // Tamaño máximo que puede ocupar length bytes comprimidos
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    public static byte[] compress(byte[] src, int length) {
+        byte[] dst = new byte[maxCompressedLength(length)];
+        int op = 0;
+        int anchor = 0;
+
+        if (length > MF_LIMIT) {
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = length - MF_LIMIT;
+            int matchEnd = length - LAST_LITERALS;
+            int ip = 0;
+            int searches = 1 << SKIP_TRIGGER;
+
+            while (ip < matchLimit) {
+                int sequence = (int) INT_LE.get(src, ip);
+                int slot = hash(sequence);
+                // Las posiciones se guardan desplazadas en 1: 0 es una entrada vacía
+                int ref = table[slot] - 1;
+                table[slot] = ip + 1;
+
+                if (ref < 0 || ip - ref > MAX_OFFSET || (int) INT_LE.get(src, ref) != sequence) {
+                    ip += searches++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searches = 1 << SKIP_TRIGGER;
+
+                // Extender la coincidencia hacia atrás sobre los literales pendientes y hacia delante
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                // ip < matchLimit garantiza que quedan bytes por comparar antes de matchEnd
+                int remaining = matchEnd - ip - MIN_MATCH;
+                int extra = Arrays.mismatch(src, ip + MIN_MATCH, matchEnd, src, ref + MIN_MATCH, ref + MIN_MATCH + remaining);
+                int matchLength = MIN_MATCH + (extra < 0 ? remaining : extra);
+
+                op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        op = writeLastLiterals(dst, op, src, anchor, length - anchor);
+        return Arrays.copyOf(dst, op);
+    }
+
+    // Descomprime un bloque cuyo tamaño original es rawLength
+    public static byte[] decompress(byte[] src, int rawLength) throws IOException {
+        byte[] dst = new byte[rawLength];
+        int ip = 0;
+        int op = 0;
+
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == src.length) {
+                    break;
+                }
+
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (offset == 0 || offset > op || op + matchLength > rawLength) {
+                    throw new IOException("Bloque LZ4 corrupto en la posición " + ip);
+                }
+
+                int from = op - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, from, dst, op, matchLength);
+                } else {
+                    // Coincidencia solapada con la salida: copiar byte a byte
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op + i] = dst[from + i];
+                    }
+                }
+                op += matchLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Bloque LZ4 corrupto o truncado", e);
+        }
+
+        if (op != rawLength) {
+            throw new IOException("Bloque LZ4 de " + op + " bytes, se esperaban " + rawLength);
+        }
+        return dst;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeSequence(byte[] dst, int op, byte[] src, int literalStart, int literalLength,
+            int offset, int matchLength) {
+        int extraMatch = matchLength - MIN_MATCH;
+        dst[op++] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(extraMatch, 15));
+        op = writeLength(dst, op, literalLength);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        return writeLength(dst, op, extraMatch);
+    }
+
+    private static int writeLastLiterals(byte[] dst, int op, byte[] src, int literalStart, int literalLength) {
+        dst[op++] = (byte) (Math.min(literalLength, 15) << 4);
+        op = writeLength(dst, op, literalLength);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    // Resto de una longitud de 15 o más en bytes de 255 más un byte final
+    private static int writeLength(byte[] dst, int op, int length) {
+        if (length < 15) {
+            return op;
+        }
+        int remaining = length - 15;
+        while (remaining >= 255) {
+            dst[op++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[op++] = (byte) remaining;
+        return op;
+    }
+}
@@ -0,0 +1,310 @@
+package servidor.aplicacion.util;
+
+/**
+ * Codificación Reed-Solomon k+m sobre GF(2^8) en Java puro.
+ * - Matriz de codificación sistemática derivada de una Vandermonde: los k
+ *   primeros fragmentos son los datos tal cual y los m restantes, paridad
+ * - Cualquier subconjunto de k fragmentos basta para reconstruir el resto
+ * - La multiplicación en el campo usa una tabla completa de 256x256, de modo
+ *   que el bucle interno es una búsqueda y un XOR por byte, recorrido por
+ *   bloques para mantener las filas de la tabla y los datos en caché
+ * Las instancias son inmutables y se pueden compartir entre hilos.
+ */
+public final class ReedSolomon {
+
+    // Polinomio generador x^8 + x^4 + x^3 + x^2 + 1
+    private static final int GENERATOR_POLYNOMIAL = 0x11D;
+    // Bytes de cada fragmento procesados por pasada
+    private static final int BLOCK_SIZE = 4096;
+
+    private static final byte[] EXP = new byte[510];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MUL_TABLE = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) x;
+            EXP[i + 255] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if ((x & 0x100) != 0) {
+                x ^= GENERATOR_POLYNOMIAL;
+            }
+        }
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL_TABLE[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final byte[][] matrix;
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards <= 0 || parityShards < 0 || dataShards + parityShards > 256) {
+            throw new IllegalArgumentException("Configuración Reed-Solomon inválida: " + dataShards + "+" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.matrix = buildMatrix(dataShards, dataShards + parityShards);
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    public int getTotalShards() {
+        return dataShards + parityShards;
+    }
+
+    // Tamaño de cada fragmento para repartir length bytes entre los fragmentos de datos
+    public int shardSize(int length) {
+        return Math.max(1, (length + dataShards - 1) / dataShards);
+    }
+
+    // Reparte los datos en k fragmentos (con relleno de ceros) y calcula los m de paridad
+    public byte[][] encode(byte[] data, int length) {
+        int shardSize = shardSize(length);
+        byte[][] shards = new byte[getTotalShards()][shardSize];
+        for (int i = 0; i < dataShards; i++) {
+            int offset = i * shardSize;
+            if (offset < length) {
+                System.arraycopy(data, offset, shards[i], 0, Math.min(shardSize, length - offset));
+            }
+        }
+        encodeParity(shards, shardSize);
+        return shards;
+    }
+
+    // Calcula los fragmentos de paridad a partir de los de datos
+    public void encodeParity(byte[][] shards, int shardSize) {
+        checkShards(shards, shardSize);
+        byte[][] parityRows = new byte[parityShards][];
+        byte[][] outputs = new byte[parityShards][];
+        for (int p = 0; p < parityShards; p++) {
+            parityRows[p] = matrix[dataShards + p];
+            outputs[p] = shards[dataShards + p];
+        }
+        byte[][] inputs = new byte[dataShards][];
+        System.arraycopy(shards, 0, inputs, 0, dataShards);
+        codeShards(parityRows, inputs, outputs, shardSize);
+    }
+
+    /**
+     * Reconstruye los fragmentos ausentes a partir de cualquier k presentes.
+     * Los ausentes deben venir como arrays de shardSize bytes (se sobrescriben)
+     * o null (se reservan).
+     */
+    public void reconstruct(byte[][] shards, boolean[] present, int shardSize) {
+        int available = 0;
+        for (boolean p : present) {
+            if (p) {
+                available++;
+            }
+        }
+        if (available < dataShards) {
+            throw new IllegalArgumentException("Se requieren al menos " + dataShards
+                    + " fragmentos para reconstruir, hay " + available);
+        }
+        if (available == getTotalShards()) {
+            return;
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!present[i] && shards[i] == null) {
+                shards[i] = new byte[shardSize];
+            }
+        }
+
+        // Tomar las filas de los k primeros fragmentos presentes e invertir esa submatriz
+        byte[][] subMatrix = new byte[dataShards][];
+        byte[][] subShards = new byte[dataShards][];
+        for (int i = 0, row = 0; i < getTotalShards() && row < dataShards; i++) {
+            if (present[i]) {
+                subMatrix[row] = matrix[i];
+                subShards[row] = shards[i];
+                row++;
+            }
+        }
+        byte[][] decodeMatrix = invert(subMatrix);
+
+        // Recuperar los fragmentos de datos que faltan
+        int missingData = 0;
+        byte[][] dataRows = new byte[dataShards][];
+        byte[][] dataOutputs = new byte[dataShards][];
+        for (int i = 0; i < dataShards; i++) {
+            if (!present[i]) {
+                dataRows[missingData] = decodeMatrix[i];
+                dataOutputs[missingData] = shards[i];
+                missingData++;
+            }
+        }
+        codeShards(trim(dataRows, missingData), subShards, trim(dataOutputs, missingData), shardSize);
+
+        // Con los datos completos, recalcular la paridad que falte
+        int missingParity = 0;
+        byte[][] parityRows = new byte[parityShards][];
+        byte[][] parityOutputs = new byte[parityShards][];
+        for (int p = 0; p < parityShards; p++) {
+            if (!present[dataShards + p]) {
+                parityRows[missingParity] = matrix[dataShards + p];
+                parityOutputs[missingParity] = shards[dataShards + p];
+                missingParity++;
+            }
+        }
+        if (missingParity > 0) {
+            byte[][] inputs = new byte[dataShards][];
+            System.arraycopy(shards, 0, inputs, 0, dataShards);
+            codeShards(trim(parityRows, missingParity), inputs, trim(parityOutputs, missingParity), shardSize);
+        }
+    }
+
+    // Concatena los fragmentos de datos y descarta el relleno
+    public byte[] join(byte[][] shards, int length) {
+        byte[] data = new byte[length];
+        int shardSize = shards[0].length;
+        for (int i = 0; i < dataShards; i++) {
+            int offset = i * shardSize;
+            if (offset >= length) {
+                break;
+            }
+            System.arraycopy(shards[i], 0, data, offset, Math.min(shardSize, length - offset));
+        }
+        return data;
+    }
+
+    // outputs[r] = suma de rows[r][c] * inputs[c], por bloques de BLOCK_SIZE bytes
+    private static void codeShards(byte[][] rows, byte[][] inputs, byte[][] outputs, int shardSize) {
+        for (int start = 0; start < shardSize; start += BLOCK_SIZE) {
+            int end = Math.min(shardSize, start + BLOCK_SIZE);
+            for (int r = 0; r < outputs.length; r++) {
+                byte[] output = outputs[r];
+                byte[] row = rows[r];
+
+                byte[] table = MUL_TABLE[row[0] & 0xFF];
+                byte[] input = inputs[0];
+                for (int i = start; i < end; i++) {
+                    output[i] = table[input[i] & 0xFF];
+                }
+                for (int c = 1; c < inputs.length; c++) {
+                    table = MUL_TABLE[row[c] & 0xFF];
+                    input = inputs[c];
+                    for (int i = start; i < end; i++) {
+                        output[i] ^= table[input[i] & 0xFF];
+                    }
+                }
+            }
+        }
+    }
+
+    // Matriz sistemática: Vandermonde multiplicada por la inversa de su bloque superior
+    private static byte[][] buildMatrix(int dataShards, int totalShards) {
+        byte[][] vandermonde = new byte[totalShards][dataShards];
+        for (int r = 0; r < totalShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                vandermonde[r][c] = power(r, c);
+            }
+        }
+
+        byte[][] top = new byte[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        return multiply(vandermonde, invert(top));
+    }
+
+    private static byte[][] multiply(byte[][] a, byte[][] b) {
+        byte[][] result = new byte[a.length][b[0].length];
+        for (int r = 0; r < a.length; r++) {
+            for (int c = 0; c < b[0].length; c++) {
+                int value = 0;
+                for (int i = 0; i < b.length; i++) {
+                    value ^= MUL_TABLE[a[r][i] & 0xFF][b[i][c] & 0xFF];
+                }
+                result[r][c] = (byte) value;
+            }
+        }
+        return result;
+    }
+
+    // Inversa por Gauss-Jordan sobre GF(2^8)
+    private static byte[][] invert(byte[][] source) {
+        int n = source.length;
+        byte[][] work = new byte[n][2 * n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(source[r], 0, work[r], 0, n);
+            work[r][n + r] = 1;
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            while (pivot < n && work[pivot][col] == 0) {
+                pivot++;
+            }
+            if (pivot == n) {
+                throw new IllegalArgumentException("Matriz singular");
+            }
+            byte[] swap = work[col];
+            work[col] = work[pivot];
+            work[pivot] = swap;
+
+            byte[] scale = MUL_TABLE[inverse(work[col][col] & 0xFF)];
+            for (int c = 0; c < 2 * n; c++) {
+                work[col][c] = scale[work[col][c] & 0xFF];
+            }
+            for (int r = 0; r < n; r++) {
+                int factor = work[r][col] & 0xFF;
+                if (r != col && factor != 0) {
+                    byte[] table = MUL_TABLE[factor];
+                    for (int c = 0; c < 2 * n; c++) {
+                        work[r][c] ^= table[work[col][c] & 0xFF];
+                    }
+                }
+            }
+        }
+
+        byte[][] inverse = new byte[n][n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(work[r], n, inverse[r], 0, n);
+        }
+        return inverse;
+    }
+
+    private static byte power(int base, int exponent) {
+        if (exponent == 0) {
+            return 1;
+        }
+        if (base == 0) {
+            return 0;
+        }
+        return EXP[(LOG[base] * exponent) % 255];
+    }
+
+    private static int inverse(int value) {
+        return EXP[255 - LOG[value]] & 0xFF;
+    }
+
+    private static byte[][] trim(byte[][] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        byte[][] trimmed = new byte[length][];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    private void checkShards(byte[][] shards, int shardSize) {
+        if (shards.length != getTotalShards()) {
+            throw new IllegalArgumentException("Se esperaban " + getTotalShards() + " fragmentos, hay " + shards.length);
+        }
+        for (byte[] shard : shards) {
+            if (shard == null || shard.length < shardSize) {
+                throw new IllegalArgumentException("Fragmento ausente o menor que " + shardSize + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package servidor.aplicacion.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.net.ServerSocket;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import servidor.aplicacion.dao.ContentChunkDAO;
+import servidor.aplicacion.dao.FileChunkDAO;
+import servidor.aplicacion.dao.FileDAO;
+import servidor.aplicacion.dto.ChunkTransferDTO;
+import servidor.aplicacion.interfaces.NodeInterface;
+import servidor.aplicacion.manager.NodeManager;
+import servidor.aplicacion.model.ChunkReplica;
+import servidor.aplicacion.model.ContentChunk;
+import servidor.aplicacion.model.ContentLocation;
+import servidor.aplicacion.model.File;
+import servidor.aplicacion.model.FileChunk;
+import servidor.aplicacion.model.Node;
+
+/**
+ * Subidas que fallan a mitad: lo que ya llegó a los nodos y a la BD debe
+ * deshacerse. Los DAO viven en memoria y los nodos son servidores RMI locales
+ * que rechazan los chunks que empiezan por REJECTED_MARKER.
+ */
+public class DistributedFileServiceTest {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final byte REJECTED_MARKER = 0x7F;
+    private static final long USER_ID = 7;
+
+    private final List<Registry> registries = new ArrayList<>();
+    private final List<FakeStorageNode> storageNodes = new ArrayList<>();
+    private InMemoryFileDAO fileDAO;
+    private InMemoryFileChunkDAO fileChunkDAO;
+    private InMemoryContentChunkDAO contentChunkDAO;
+    private FixedNodeManager nodeManager;
+    private DistributedFileService service;
+
+    @Before
+    public void setUp() throws Exception {
+        List<Node> nodes = new ArrayList<>();
+        for (long id = 1; id <= 2; id++) {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            Registry registry = LocateRegistry.createRegistry(port);
+            FakeStorageNode storageNode = new FakeStorageNode();
+            registry.rebind("StorageNode", storageNode);
+            registries.add(registry);
+            storageNodes.add(storageNode);
+
+            Node node = new Node("127.0.0.1", port);
+            node.setId(id);
+            nodes.add(node);
+        }
+
+        fileDAO = new InMemoryFileDAO();
+        contentChunkDAO = new InMemoryContentChunkDAO();
+        fileChunkDAO = new InMemoryFileChunkDAO(nodes, contentChunkDAO);
+        nodeManager = new FixedNodeManager(nodes);
+        service = new DistributedFileService(fileDAO, fileChunkDAO, contentChunkDAO, nodeManager);
+        service.setReplicationMode(DistributedFileService.ReplicationMode.FAN_OUT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.shutdown();
+        nodeManager.shutdown();
+        for (FakeStorageNode storageNode : storageNodes) {
+            UnicastRemoteObject.unexportObject(storageNode, true);
+        }
+        for (Registry registry : registries) {
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    @Test
+    public void failedUploadRemovesStoredChunksAndFileRow() throws Exception {
+        service.setDeduplicationEnabled(false);
+
+        assertUploadFails(fileWithRejectedChunk());
+
+        assertTrue("quedó la fila del archivo", fileDAO.files.isEmpty());
+        assertTrue("quedaron filas de chunks", fileChunkDAO.rows.isEmpty());
+        for (FakeStorageNode storageNode : storageNodes) {
+            assertTrue("quedaron chunks en un nodo: " + storageNode.chunks.keySet(), storageNode.chunks.isEmpty());
+        }
+    }
+
+    @Test
+    public void failedUploadReleasesDeduplicatedContent() throws Exception {
+        service.setDeduplicationEnabled(true);
+
+        assertUploadFails(fileWithRejectedChunk());
+
+        assertTrue("quedó la fila del archivo", fileDAO.files.isEmpty());
+        assertTrue("quedaron filas de chunks", fileChunkDAO.rows.isEmpty());
+        assertEquals("quedaron referencias a contenidos", Map.of(), contentChunkDAO.refCounts);
+        assertTrue("quedaron copias registradas", contentChunkDAO.locations.isEmpty());
+        for (FakeStorageNode storageNode : storageNodes) {
+            assertTrue("quedaron copias en un nodo: " + storageNode.chunks.keySet(), storageNode.chunks.isEmpty());
+        }
+    }
+
+    private void assertUploadFails(byte[] data) throws Exception {
+        File file = new File("datos.bin", null, USER_ID, 1, (long) data.length);
+        try {
+            service.uploadFile(file, new ByteArrayInputStream(data), USER_ID);
+            fail("La subida debía fallar");
+        } catch (Exception expected) {
+            // Los dos nodos rechazan el segundo chunk
+        }
+    }
+
+    // Tres chunks distintos; el segundo lo rechazan todos los nodos
+    private static byte[] fileWithRejectedChunk() {
+        byte[] data = new byte[3 * CHUNK_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / CHUNK_SIZE + i % 13);
+        }
+        data[CHUNK_SIZE] = REJECTED_MARKER;
+        data[0] = 0;
+        data[2 * CHUNK_SIZE] = 2;
+        return data;
+    }
+
+    // Nodo de almacenamiento en memoria; solo implementa lo que usa la subida y su limpieza
+    private static class FakeStorageNode extends UnicastRemoteObject implements NodeInterface {
+        final Map<String, byte[]> chunks = new ConcurrentHashMap<>();
+
+        FakeStorageNode() throws RemoteException {
+            super();
+        }
+
+        @Override
+        public boolean storeFileChunk(String fileId, int chunkNumber, byte[] data) {
+            if (data.length > 0 && data[0] == REJECTED_MARKER) {
+                return false;
+            }
+            chunks.put(fileId + "_" + chunkNumber, data);
+            return true;
+        }
+
+        @Override
+        public byte[] retrieveFileChunk(String fileId, int chunkNumber) {
+            return chunks.get(fileId + "_" + chunkNumber);
+        }
+
+        @Override
+        public boolean deleteFileChunk(String fileId, int chunkNumber) {
+            return chunks.remove(fileId + "_" + chunkNumber) != null;
+        }
+
+        @Override
+        public int deleteFileChunks(String fileId) {
+            int before = chunks.size();
+            chunks.keySet().removeIf(key -> key.startsWith(fileId + "_"));
+            return before - chunks.size();
+        }
+
+        @Override
+        public int getDataPort() {
+            return -1;
+        }
+
+        @Override
+        public List<String> listStoredFiles() {
+            return new ArrayList<>(chunks.keySet());
+        }
+
+        @Override
+        public boolean[] storeFileChunks(List<ChunkTransferDTO> chunkList) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<byte[]> retrieveFileChunks(List<ChunkTransferDTO> chunkList) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean[] hasFiles(List<ChunkTransferDTO> chunkList) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getNodeStatus() {
+            return "ONLINE";
+        }
+
+        @Override
+        public long getAvailableSpace() {
+            return 1L << 30;
+        }
+
+        @Override
+        public long getUsedSpace() {
+            return 0;
+        }
+
+        @Override
+        public boolean ping() {
+            return true;
+        }
+
+        @Override
+        public void updateNodeInfo(String status, long availableSpace, long usedSpace) {
+        }
+
+        @Override
+        public boolean isHealthy() {
+            return true;
+        }
+
+        @Override
+        public List<String> getFileList() {
+            return listStoredFiles();
+        }
+
+        @Override
+        public boolean hasFile(String fileId, int chunkNumber) {
+            return chunks.containsKey(fileId + "_" + chunkNumber);
+        }
+
+        @Override
+        public boolean replicateChunk(String fileId, int chunkNumber, byte[] data, String targetNodeUrl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean[] storeFileChunkChain(String fileId, int chunkNumber, byte[] data, List<String> downstreamUrls) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Vista fija de nodos siempre online; marcarlos offline no cambia nada
+    private static class FixedNodeManager extends NodeManager {
+        private final List<Node> nodes;
+
+        FixedNodeManager(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public List<Node> getOnlineNodes() {
+            List<Node> copies = new ArrayList<>();
+            for (Node node : nodes) {
+                copies.add(new Node(node));
+            }
+            return copies;
+        }
+
+        @Override
+        public boolean isNodeOnline(Long nodeId) {
+            return true;
+        }
+
+        @Override
+        public boolean markNodeAsOffline(Long nodeId) {
+            return true;
+        }
+
+        @Override
+        public Node getNodeById(Long nodeId) {
+            for (Node node : nodes) {
+                if (node.getId().equals(nodeId)) {
+                    return new Node(node);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class InMemoryFileDAO extends FileDAO {
+        final Map<Long, File> files = new ConcurrentHashMap<>();
+        private final AtomicLong nextId = new AtomicLong(100);
+
+        @Override
+        public File save(File file) {
+            file.setId(nextId.incrementAndGet());
+            files.put(file.getId(), file);
+            return file;
+        }
+
+        @Override
+        public File findById(long id) {
+            return files.get(id);
+        }
+
+        @Override
+        public File update(File file) {
+            files.put(file.getId(), file);
+            return file;
+        }
+
+        @Override
+        public void delete(long id) {
+            files.remove(id);
+        }
+    }
+
+    private static class InMemoryFileChunkDAO extends FileChunkDAO {
+        final List<FileChunk> rows = new ArrayList<>();
+        private final Map<Long, Node> nodesById = new HashMap<>();
+        private final InMemoryContentChunkDAO contents;
+
+        InMemoryFileChunkDAO(List<Node> nodes, InMemoryContentChunkDAO contents) {
+            for (Node node : nodes) {
+                nodesById.put(node.getId(), node);
+            }
+            this.contents = contents;
+        }
+
+        // Como en la BD, las copias de contenidos se registran también en content_locations
+        @Override
+        public synchronized List<FileChunk> saveAll(List<FileChunk> chunks) {
+            rows.addAll(chunks);
+            for (FileChunk chunk : chunks) {
+                if (chunk.getContentId() != null && chunk.getContentHash() != null) {
+                    contents.addLocation(new ContentLocation(chunk.getContentId(), chunk.getNodeId(),
+                            chunk.getStorageId(), chunk.getStorageIndex()));
+                }
+            }
+            return chunks;
+        }
+
+        @Override
+        public synchronized Map<Integer, List<ChunkReplica>> findReplicasByFileId(long fileId) {
+            Map<Integer, List<ChunkReplica>> plan = new LinkedHashMap<>();
+            for (FileChunk row : rows) {
+                if (row.getFileId() == fileId) {
+                    plan.computeIfAbsent(row.getChunkIndex(), index -> new ArrayList<>())
+                            .add(new ChunkReplica(row, nodesById.get(row.getNodeId())));
+                }
+            }
+            return plan;
+        }
+
+        @Override
+        public synchronized List<FileChunk> findLocationsByContentId(long contentId) {
+            List<FileChunk> locations = new ArrayList<>();
+            for (FileChunk row : rows) {
+                if (row.getContentId() != null && row.getContentId() == contentId) {
+                    locations.add(row);
+                }
+            }
+            return locations;
+        }
+
+        @Override
+        public synchronized void deleteByFileId(long fileId) {
+            rows.removeIf(row -> row.getFileId() == fileId);
+        }
+    }
+
+    private static class InMemoryContentChunkDAO extends ContentChunkDAO {
+        final Map<Long, Integer> refCounts = new HashMap<>();
+        final List<ContentLocation> locations = new ArrayList<>();
+        private final Map<String, ContentChunk> byKey = new HashMap<>();
+        private long nextId = 500;
+
+        @Override
+        public synchronized ContentChunk findByHash(String hash, String redundancy) {
+            ContentChunk content = byKey.get(hash + "/" + redundancy);
+            return content != null && refCounts.containsKey(content.getId()) ? content : null;
+        }
+
+        @Override
+        public synchronized ContentChunk register(ContentChunk content) {
+            ContentChunk existing = findByHash(content.getHash(), content.getRedundancy());
+            if (existing != null) {
+                refCounts.merge(existing.getId(), 1, Integer::sum);
+                return existing;
+            }
+            content.setId(++nextId);
+            byKey.put(content.getHash() + "/" + content.getRedundancy(), content);
+            refCounts.put(content.getId(), 1);
+            return content;
+        }
+
+        @Override
+        public synchronized boolean addReference(long contentId) {
+            return refCounts.computeIfPresent(contentId, (id, count) -> count + 1) != null;
+        }
+
+        synchronized void addLocation(ContentLocation location) {
+            for (ContentLocation existing : locations) {
+                if (sameLocation(existing, location)) {
+                    return;
+                }
+            }
+            locations.add(location);
+        }
+
+        @Override
+        public synchronized List<ContentLocation> findLocations(long contentId) {
+            List<ContentLocation> found = new ArrayList<>();
+            for (ContentLocation location : locations) {
+                if (location.getContentId() == contentId) {
+                    found.add(location);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public synchronized void deleteLocations(List<ContentLocation> deleted) {
+            locations.removeIf(location -> deleted.stream().anyMatch(other -> sameLocation(location, other)));
+        }
+
+        private static boolean sameLocation(ContentLocation a, ContentLocation b) {
+            return a.getContentId() == b.getContentId() && a.getNodeId() == b.getNodeId()
+                    && a.getStorageId().equals(b.getStorageId()) && a.getStorageIndex() == b.getStorageIndex();
+        }
+
+        @Override
+        public synchronized int release(long contentId) {
+            Integer count = refCounts.get(contentId);
+            if (count == null || count <= 1) {
+                refCounts.remove(contentId);
+                return 0;
+            }
+            refCounts.put(contentId, count - 1);
+            return count - 1;
+        }
+    }
+}